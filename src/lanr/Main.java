@@ -1,8 +1,22 @@
 package lanr;
 
+import java.util.Arrays;
+
+import lanr.batch.BatchAnalyzer;
+
 public class Main {
 
+	/**
+	 * Argument starting the headless batch analysis instead of the user interface.
+	 */
+	private static final String BATCH_ARGUMENT = "--batch";
+
 	public static void main(String[] args) {
-		Lanr.main(args);
+		//The JavaFX classes are only loaded when the user interface is started
+		if(args.length > 0 && BATCH_ARGUMENT.equals(args[0])) {
+			BatchAnalyzer.main(Arrays.copyOfRange(args, 1, args.length));
+		} else {
+			Lanr.main(args);
+		}
 	}
 }
@@ -0,0 +1,272 @@
+package lanr.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lanr.logic.AnalysisPipeline;
+import lanr.logic.CoarseToFineSearch;
+import lanr.logic.DetectorRunner;
+import lanr.logic.FileReader;
+import lanr.logic.model.AudioData;
+import lanr.logic.model.LANRFileException;
+import lanr.model.JobScheduler;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Analyzes files and directories of recordings without a user
+ *         interface. Every file is searched by all noise searches while it
+ *         is decoded, files are analyzed in parallel
+ *         with the longest recordings first. The results are written as one
+ *         JSON or CSV file per recording. In the coarse mode a file is
+ *         decoded first and then only the candidate regions of a
+ *         {@link CoarseToFineSearch} are searched.<br>
+ *         This class must not use any JavaFX classes, so it can be run on
+ *         machines without a display.
+ *
+ */
+public class BatchAnalyzer {
+
+	/**
+	 * Extensions of the files which are analyzed when a directory is given.
+	 */
+	private static final Set<String> AUDIO_EXTENSIONS = new HashSet<String>(Arrays.asList(
+			"wav", "wave", "mp3", "flac", "ogg", "oga", "opus", "m4a", "aac", "aif", "aiff", "wma"));
+
+	private static final String USAGE = "Usage: lanr --batch [--format json|csv] [--output <directory>] "
+			+ "[--threads <count>] [--coarse] <file|directory|@list>...";
+
+	private final JobScheduler scheduler;
+	private final ResultWriter writer;
+	/**
+	 * Search used in the coarse mode, null if the files are searched while they are decoded.
+	 */
+	private final CoarseToFineSearch coarseSearch;
+
+	/**
+	 * @param threads - Number of files analyzed in parallel.
+	 * @param writer - Writer for the results of the files.
+	 */
+	public BatchAnalyzer(int threads, ResultWriter writer) {
+		this(threads, writer, false);
+	}
+
+	/**
+	 * @param threads - Number of files analyzed in parallel.
+	 * @param writer - Writer for the results of the files.
+	 * @param coarse - True if only the candidate regions of the files should be searched.
+	 */
+	public BatchAnalyzer(int threads, ResultWriter writer, boolean coarse) {
+		this.scheduler = new JobScheduler(threads);
+		this.writer = writer;
+		this.coarseSearch = coarse ? new CoarseToFineSearch() : null;
+	}
+
+	public static void main(String[] args) {
+		ResultWriter.Format format = ResultWriter.Format.JSON;
+		Path output = Paths.get("lanr-results");
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean coarse = false;
+		List<String> inputs = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--format":
+					format = ResultWriter.Format.valueOf(getValue(args, ++i).toUpperCase(Locale.ROOT));
+					break;
+				case "--output":
+					output = Paths.get(getValue(args, ++i));
+					break;
+				case "--threads":
+					threads = Integer.parseInt(getValue(args, ++i));
+					break;
+				case "--coarse":
+					coarse = true;
+					break;
+				default:
+					inputs.add(args[i]);
+				}
+			}
+			List<String> files = collectFiles(inputs);
+			if(files.isEmpty()) {
+				throw new IllegalArgumentException("No audio files found");
+			}
+			BatchAnalyzer analyzer = new BatchAnalyzer(threads, new ResultWriter(output, format), coarse);
+			List<BatchResult> results = analyzer.analyze(files);
+			analyzer.shutdown();
+			if(results.stream().anyMatch(r -> r.getError() != null)) {
+				System.exit(1);
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		} catch (InterruptedException e) {
+			System.exit(130);
+		}
+	}
+
+	/**
+	 * Analyzes all files and writes their results.
+	 * Prints the progress and the throughput to the standard output.
+	 * @param files - Paths of the files.
+	 * @return Results of all files in the order in which they have been finished.
+	 * @throws InterruptedException
+	 */
+	public List<BatchResult> analyze(List<String> files) throws InterruptedException {
+		List<BatchResult> results = Collections.synchronizedList(new ArrayList<BatchResult>());
+		CountDownLatch remaining = new CountDownLatch(files.size());
+		long start = System.nanoTime();
+		for(String file : files) {
+			BatchResult result = new BatchResult(file);
+			AudioData data = null;
+			try {
+				data = FileReader.getFile(file, null);
+			} catch (IOException | LANRFileException | RuntimeException e) {
+				result.setError(getMessage(e));
+			}
+			final AudioData audioData = data;
+			scheduler.submitBatch(() -> {
+				try {
+					if(audioData != null) {
+						analyze(audioData, result);
+					}
+					finish(result);
+					results.add(result);
+				} finally {
+					remaining.countDown();
+				}
+			}, data == null ? 0 : data.getLength());
+		}
+		remaining.await();
+		printSummary(results, (System.nanoTime() - start) / 1000000);
+		return results;
+	}
+
+	/**
+	 * Stops the threads of the analyzer.
+	 */
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Decodes and searches a single file.
+	 */
+	private void analyze(AudioData data, BatchResult result) {
+		try {
+			AnalysisPipeline pipeline = new AnalysisPipeline(data);
+			if(coarseSearch == null) {
+				//All searches run in a single pass while the file is decoded
+				pipeline.addConsumer(DetectorRunner::new);
+			}
+			pipeline.start();
+			long start = System.nanoTime();
+			FileReader.readFile(data, null, pipeline);
+			if(coarseSearch != null) {
+				coarseSearch.search(data);
+			}
+			result.setAnalysisTime((System.nanoTime() - start) / 1000000);
+			result.setData(data);
+		} catch (IOException | RuntimeException e) {
+			result.setError(getMessage(e));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result.setError("Analysis has been interrupted");
+		} finally {
+			data.releaseSamples();
+		}
+	}
+
+	/**
+	 * Writes the result of a file and reports it.
+	 */
+	private void finish(BatchResult result) {
+		try {
+			Path file = writer.write(result);
+			if(result.getError() == null) {
+				System.out.println("Analyzed " + result.getPath() + " -> " + file);
+			} else {
+				System.err.println("Failed " + result.getPath() + ": " + result.getError());
+			}
+		} catch (IOException e) {
+			result.setError("Could not write result: " + getMessage(e));
+			System.err.println("Failed " + result.getPath() + ": " + result.getError());
+		}
+	}
+
+	private static void printSummary(List<BatchResult> results, long wallTime) {
+		long failed = results.stream().filter(r -> r.getError() != null).count();
+		long recordingSeconds = results.stream().filter(r -> r.getError() == null)
+				.mapToLong(BatchResult::getLength).sum();
+		double recordingHours = recordingSeconds / 3600.0;
+		double wallMinutes = Math.max(wallTime, 1) / 60000.0;
+		System.out.println(String.format(Locale.ROOT,
+				"Analyzed %d files (%d failed): %.2f recording hours in %.2f minutes, %.2f recording hours per minute",
+				results.size(), failed, recordingHours, wallMinutes, recordingHours / wallMinutes));
+	}
+
+	/**
+	 * Expands directories and file lists into the paths of the audio files.
+	 * Arguments starting with <i>@</i> name a file containing one path per line.
+	 * @throws IOException
+	 */
+	private static List<String> collectFiles(List<String> inputs) throws IOException {
+		List<String> files = new ArrayList<String>();
+		for(String input : inputs) {
+			if(input.startsWith("@")) {
+				for(String line : Files.readAllLines(Paths.get(input.substring(1)), StandardCharsets.UTF_8)) {
+					if(!line.isBlank()) {
+						files.addAll(collectFiles(Collections.singletonList(line.strip())));
+					}
+				}
+			} else if(Files.isDirectory(Paths.get(input))) {
+				try (Stream<Path> paths = Files.walk(Paths.get(input))) {
+					files.addAll(paths.filter(Files::isRegularFile)
+							.filter(BatchAnalyzer::isAudioFile)
+							.map(Path::toString)
+							.sorted()
+							.collect(Collectors.toList()));
+				}
+			} else if(Files.isRegularFile(Paths.get(input))) {
+				files.add(input);
+			} else {
+				throw new IllegalArgumentException("File not found: " + input);
+			}
+		}
+		return files;
+	}
+
+	private static boolean isAudioFile(Path path) {
+		String name = path.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 && AUDIO_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+
+	private static String getValue(String[] args, int index) {
+		if(index >= args.length) {
+			throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+		}
+		return args[index];
+	}
+
+	private static String getMessage(Exception e) {
+		return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+	}
+}
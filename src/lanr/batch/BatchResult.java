@@ -0,0 +1,115 @@
+package lanr.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.AudioData;
+import lanr.logic.model.Noise;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Result of analyzing a single file in a batch. Only the meta data and
+ *         the found noises are kept, so the samples of the file can be
+ *         released as soon as it has been analyzed.
+ *
+ */
+public class BatchResult {
+
+	private final String path;
+	private long length;
+	/**
+	 * Number of samples of the longest channel.
+	 */
+	private long frameCount;
+	private int sampleRate;
+	private int bitDepth;
+	private int channelCount;
+	private final List<Noise> noises = new ArrayList<Noise>();
+	private double severity;
+	/**
+	 * Time spent decoding and searching the file in milliseconds.
+	 */
+	private long analysisTime;
+	private String error;
+
+	public BatchResult(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * Copies the meta data and the found noises of an analyzed file.
+	 * @param data - Analyzed audio data.
+	 */
+	public void setData(AudioData data) {
+		this.length = data.getLength();
+		this.frameCount = 0;
+		this.sampleRate = data.getSampleRate();
+		this.bitDepth = data.getBitDepth();
+		this.channelCount = data.getAllChannel().size();
+		this.severity = data.getSeverity();
+		noises.clear();
+		for(AudioChannel channel : data.getAllChannel()) {
+			frameCount = Math.max(frameCount, channel.getFrameCount());
+			noises.addAll(channel.getFoundNoise());
+		}
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Length of the recording in seconds.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return Exact number of samples of the longest channel.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getBitDepth() {
+		return bitDepth;
+	}
+
+	public int getChannelCount() {
+		return channelCount;
+	}
+
+	public List<Noise> getNoises() {
+		return noises;
+	}
+
+	public double getSeverity() {
+		return severity;
+	}
+
+	public long getAnalysisTime() {
+		return analysisTime;
+	}
+
+	public void setAnalysisTime(long analysisTime) {
+		this.analysisTime = analysisTime;
+	}
+
+	/**
+	 * @return Message of the error which stopped the analysis or null if the file has been analyzed.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+}
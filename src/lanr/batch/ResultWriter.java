@@ -0,0 +1,174 @@
+package lanr.batch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import lanr.logic.model.Noise;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Writes the {@link BatchResult} of a file into its own result file.
+ *
+ */
+public class ResultWriter {
+
+	/**
+	 * Supported formats of the result files.
+	 */
+	public enum Format {
+		JSON(".json"),
+		CSV(".csv");
+
+		private final String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	private static final String CSV_HEADER =
+			"path,length,frames,sampleRate,bitDepth,error,channel,type,location,noiseLength,severity";
+
+	private final Path directory;
+	private final Format format;
+	/**
+	 * Files written by this writer, files of earlier runs are overwritten.
+	 */
+	private final Set<Path> writtenFiles = new HashSet<Path>();
+
+	/**
+	 * @param directory - Directory the result files are written to.
+	 * @param format - Format of the result files.
+	 */
+	public ResultWriter(Path directory, Format format) {
+		this.directory = directory;
+		this.format = format;
+	}
+
+	/**
+	 * Writes the result into a file named after the analyzed file.
+	 * @param result - Result of a single file.
+	 * @return Path of the written file.
+	 * @throws IOException
+	 */
+	public synchronized Path write(BatchResult result) throws IOException {
+		Files.createDirectories(directory);
+		Path file = getOutputFile(result);
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			if(format == Format.JSON) {
+				writeJson(writer, result);
+			} else {
+				writeCsv(writer, result);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Creates an unused file name, so files with the same name from different
+	 * directories do not overwrite each other.
+	 */
+	private Path getOutputFile(BatchResult result) {
+		String name = Paths.get(result.getPath()).getFileName().toString();
+		Path file = directory.resolve(name + format.getExtension());
+		for (int i = 1; writtenFiles.contains(file); i++) {
+			file = directory.resolve(name + "-" + i + format.getExtension());
+		}
+		writtenFiles.add(file);
+		return file;
+	}
+
+	private static void writeJson(Writer writer, BatchResult result) throws IOException {
+		writer.write("{\n");
+		writer.write("  \"path\": " + quoteJson(result.getPath()) + ",\n");
+		writer.write("  \"length\": " + result.getLength() + ",\n");
+		writer.write("  \"frames\": " + result.getFrameCount() + ",\n");
+		writer.write("  \"sampleRate\": " + result.getSampleRate() + ",\n");
+		writer.write("  \"bitDepth\": " + result.getBitDepth() + ",\n");
+		writer.write("  \"channels\": " + result.getChannelCount() + ",\n");
+		writer.write("  \"severity\": " + formatNumber(result.getSeverity()) + ",\n");
+		writer.write("  \"analysisTime\": " + result.getAnalysisTime() + ",\n");
+		writer.write("  \"error\": " + (result.getError() == null ? "null" : quoteJson(result.getError())) + ",\n");
+		writer.write("  \"noises\": [");
+		String separator = "\n";
+		for(Noise noise : result.getNoises()) {
+			writer.write(separator);
+			writer.write("    {\"channel\": " + noise.getChannel()
+					+ ", \"type\": " + quoteJson(noise.getType().name())
+					+ ", \"location\": " + noise.getLocation()
+					+ ", \"length\": " + noise.getLength()
+					+ ", \"severity\": " + formatNumber(noise.getSeverity()) + "}");
+			separator = ",\n";
+		}
+		writer.write(result.getNoises().isEmpty() ? "]\n" : "\n  ]\n");
+		writer.write("}\n");
+	}
+
+	private static void writeCsv(Writer writer, BatchResult result) throws IOException {
+		writer.write(CSV_HEADER + "\n");
+		String file = quoteCsv(result.getPath()) + "," + result.getLength() + "," + result.getFrameCount()
+				+ "," + result.getSampleRate()
+				+ "," + result.getBitDepth() + "," + quoteCsv(result.getError() == null ? "" : result.getError());
+		if(result.getNoises().isEmpty()) {
+			writer.write(file + ",,,,,\n");
+		}
+		for(Noise noise : result.getNoises()) {
+			writer.write(file + "," + noise.getChannel() + "," + noise.getType().name() + ","
+					+ noise.getLocation() + "," + noise.getLength() + "," + formatNumber(noise.getSeverity()) + "\n");
+		}
+	}
+
+	private static String formatNumber(double value) {
+		return String.format(Locale.ROOT, "%.4f", value);
+	}
+
+	private static String quoteJson(String value) {
+		StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			default:
+				if(c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				} else {
+					builder.append(c);
+				}
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	private static String quoteCsv(String value) {
+		if(value.contains(",") || value.contains("\"") || value.contains("\n")) {
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+		return value;
+	}
+}
@@ -0,0 +1,290 @@
+package lanr.logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.AudioData;
+import lanr.logic.model.SampleBlock;
+import lanr.logic.model.SampleBlockPool;
+import lanr.logic.model.SampleStore;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Streams decoded samples from the decoder to the consumers of each
+ *         channel. The decoder writes fixed size {@link SampleBlock}s into a
+ *         bounded queue per channel, while a worker thread per channel hands
+ *         them to the registered {@link SampleBlockConsumer}s. A full queue
+ *         blocks the decoder until the consumers caught up. If a consumer
+ *         fails, the next write rethrows its failure, so the decoder stops
+ *         instead of decoding the rest of the file for nothing.<br>
+ *         The blocks are taken from a {@link SampleBlockPool} and released
+ *         after the last consumer processed them, so decoding does not
+ *         allocate new blocks once the pipeline is filled.
+ *
+ */
+public class AnalysisPipeline {
+
+	/**
+	 * Number of samples per block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+	/**
+	 * Number of blocks which can be queued per channel.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+	/**
+	 * Marks the end of the stream of a channel.
+	 */
+	private static final SampleBlock END_OF_STREAM = new SampleBlock(0);
+
+	private final AudioData data;
+	private final SampleBlockPool pool;
+	private final int queueCapacity;
+	private final List<Function<AudioChannel, SampleBlockConsumer>> consumerFactories =
+			new ArrayList<Function<AudioChannel, SampleBlockConsumer>>();
+	private final Map<Integer, ChannelStage> stages = new HashMap<Integer, ChannelStage>();
+	/**
+	 * First exception or error thrown by a consumer.
+	 */
+	private volatile Throwable failure;
+	private volatile boolean cancelled = false;
+
+	public AnalysisPipeline(AudioData data) {
+		this(data, DEFAULT_BLOCK_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public AnalysisPipeline(AudioData data, int blockSize, int queueCapacity) {
+		if(blockSize <= 0 || queueCapacity <= 0) {
+			throw new IllegalArgumentException("Block size and queue capacity have to be positive");
+		}
+		this.data = data;
+		this.pool = new SampleBlockPool(blockSize);
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Registers a consumer which will be created for every channel
+	 * when the pipeline is started.
+	 * @param factory - Creates the consumer for a given channel.
+	 */
+	public void addConsumer(Function<AudioChannel, SampleBlockConsumer> factory) {
+		if(!stages.isEmpty()) {
+			throw new IllegalStateException("Consumers have to be added before the pipeline is started");
+		}
+		consumerFactories.add(factory);
+	}
+
+	/**
+	 * Starts a worker thread for every channel of the audio data.
+	 */
+	public void start() {
+		if(!stages.isEmpty()) {
+			throw new IllegalStateException("Pipeline has already been started");
+		}
+		for(AudioChannel channel : data.getAllChannel()) {
+			List<SampleBlockConsumer> consumers = new ArrayList<SampleBlockConsumer>();
+			//The channel is always the first consumer, so it has the data before any other consumer
+			consumers.add(channel::addSamples);
+			for(Function<AudioChannel, SampleBlockConsumer> factory : consumerFactories) {
+				consumers.add(factory.apply(channel));
+			}
+			ChannelStage stage = new ChannelStage(channel, consumers);
+			stages.put(channel.getIndex(), stage);
+			stage.worker.start();
+		}
+	}
+
+	/**
+	 * Appends samples to the stream of the given channel.
+	 * Blocks if the queue of the channel is full.
+	 * @param channel - Channel the samples belong to.
+	 * @param samples - Array containing the samples.
+	 * @param offset - Index of the first sample.
+	 * @param length - Number of samples.
+	 * @throws InterruptedException
+	 * @throws IllegalStateException if a consumer failed, unless its failure is rethrown as it is.
+	 */
+	public void write(AudioChannel channel, short[] samples, int offset, int length) throws InterruptedException {
+		rethrowFailure();
+		if(cancelled) {
+			//The blocks would only be discarded by the workers
+			return;
+		}
+		ChannelStage stage = getStage(channel);
+		int end = offset + length;
+		while (offset < end) {
+			if(stage.current == null) {
+				stage.current = pool.acquire();
+				stage.current.setPosition(stage.written);
+			}
+			int copied = stage.current.fill(samples, offset, end - offset);
+			offset += copied;
+			stage.written += copied;
+			if(stage.current.isFull()) {
+				stage.queue.put(stage.current);
+				stage.current = null;
+			}
+		}
+	}
+
+	/**
+	 * Streams the samples already stored in the channel through the pipeline,
+	 * so the consumers receive them without decoding the file again.
+	 * @param channel - Channel containing the samples.
+	 * @throws InterruptedException
+	 */
+	public void replay(AudioChannel channel) throws InterruptedException {
+		SampleStore store = channel.getSampleStore();
+		short[] buffer = new short[pool.getBlockSize()];
+		long position = getStage(channel).written;
+		int read;
+		while (!cancelled && (read = store.read(position, buffer, 0, buffer.length)) > 0) {
+			write(channel, buffer, 0, read);
+			position += read;
+		}
+	}
+
+	/**
+	 * Sends the remaining samples and marks the end of all channel streams.
+	 * @throws InterruptedException
+	 */
+	public void close() throws InterruptedException {
+		for(ChannelStage stage : stages.values()) {
+			if(stage.current != null) {
+				stage.queue.put(stage.current);
+				stage.current = null;
+			}
+			stage.queue.put(END_OF_STREAM);
+		}
+	}
+
+	/**
+	 * Waits until all consumers processed the last block of their channel.
+	 * @throws InterruptedException
+	 */
+	public void await() throws InterruptedException {
+		for(ChannelStage stage : stages.values()) {
+			stage.worker.join();
+		}
+		rethrowFailure();
+	}
+
+	/**
+	 * Throws the failure of a consumer. Runtime exceptions and errors are
+	 * thrown as they are, all others are wrapped.
+	 */
+	private void rethrowFailure() {
+		Throwable thrown = failure;
+		if(thrown instanceof RuntimeException) {
+			throw (RuntimeException) thrown;
+		}
+		if(thrown instanceof Error) {
+			throw (Error) thrown;
+		}
+		if(thrown != null) {
+			throw new IllegalStateException("A consumer of " + data.getName() + " failed", thrown);
+		}
+	}
+
+	/**
+	 * Stops the consumers from processing any further blocks.
+	 * Queued blocks are discarded.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return Pool providing the blocks of this pipeline.
+	 */
+	public SampleBlockPool getPool() {
+		return pool;
+	}
+
+	private ChannelStage getStage(AudioChannel channel) {
+		ChannelStage stage = stages.get(channel.getIndex());
+		if(stage == null) {
+			throw new IllegalStateException("Pipeline has not been started for channel " + channel.getIndex());
+		}
+		return stage;
+	}
+
+	/**
+	 * Queue and worker of a single channel.
+	 */
+	private class ChannelStage implements Runnable {
+
+		private final BlockingQueue<SampleBlock> queue = new ArrayBlockingQueue<SampleBlock>(queueCapacity);
+		private final List<SampleBlockConsumer> consumers;
+		private final Thread worker;
+		/**
+		 * Block currently filled by the decoder. Only accessed by the decoder thread.
+		 */
+		private SampleBlock current;
+		private long written = 0;
+
+		ChannelStage(AudioChannel channel, List<SampleBlockConsumer> consumers) {
+			this.consumers = consumers;
+			this.worker = new Thread(this, "LANR-Analysis-" + data.getName() + "-" + channel.getIndex());
+			this.worker.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			//True once the end of the stream has been taken from the queue
+			boolean ended = false;
+			try {
+				SampleBlock block;
+				while ((block = queue.take()) != END_OF_STREAM) {
+					try {
+						//Keep draining the queue after a failure so the decoder never blocks forever
+						if(cancelled || failure != null) {
+							continue;
+						}
+						for(SampleBlockConsumer consumer : consumers) {
+							consumer.consume(block);
+						}
+					} finally {
+						block.release();
+					}
+				}
+				ended = true;
+				if(!cancelled && failure == null) {
+					for(SampleBlockConsumer consumer : consumers) {
+						consumer.finish();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Throwable e) {
+				//Errors are recorded as well, otherwise await would not notice the dead worker
+				if(failure == null) {
+					failure = e;
+				}
+				//The decoder never blocks on a queue which is not taken from anymore
+				if(!ended) {
+					drain();
+				}
+			}
+		}
+
+		private void drain() {
+			try {
+				SampleBlock block;
+				while ((block = queue.take()) != END_OF_STREAM) {
+					block.release();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
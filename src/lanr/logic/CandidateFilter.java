@@ -0,0 +1,23 @@
+package lanr.logic;
+
+import java.util.BitSet;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Implemented by {@link NoiseSearch}es which can tell from a
+ *         {@link CoarseChannel} where a channel could contain their noises.
+ *         A block which is not flagged must not contain the beginning or any
+ *         part of a noise the search would find, flagging too many blocks only
+ *         costs time.
+ *
+ */
+public interface CandidateFilter {
+
+	/**
+	 * Flags the blocks which have to be searched at full resolution.
+	 * @param coarse - Summary of the channel.
+	 * @return Indices of the candidate blocks.
+	 */
+	BitSet getCandidates(CoarseChannel coarse);
+}
@@ -1,14 +1,201 @@
 package lanr.logic;
 
-import lanr.logic.model.AudioData;
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+import lanr.logic.model.AudioChannel;
 import lanr.logic.model.Noise;
+import lanr.logic.model.NoiseType;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Searches for runs of consecutive samples at or near the full scale of
+ *         the channel. The samples are scanned block by block in a single pass,
+ *         runs which span multiple blocks are continued in the next block.
+ *         Runs which are close to each other are merged into one noise.<br>
+ *         Most blocks do not contain any clipped sample, so every block is
+ *         first checked by a simple loop without branches, which the JIT can
+ *         vectorize. Only blocks reaching the threshold are searched for runs.
+ *         The same check on the peaks of a {@link CoarseChannel} finds all
+ *         blocks which contain clipped samples.
+ *
+ */
+public class ClippingSearch implements NoiseSearch, CandidateFilter {
+
+	/**
+	 * Minimum number of consecutive samples at full scale which count as clipping.
+	 */
+	public static final int DEFAULT_MIN_RUN_LENGTH = 3;
+	/**
+	 * Maximum distance in seconds between two runs which are merged into one noise.
+	 */
+	public static final double DEFAULT_MERGE_DISTANCE = 0.05;
+
+	private final int minRunLength;
+	private final double mergeDistance;
+
+	/*
+	 * State of the channel which is currently searched
+	 */
+	/**
+	 * Receives every noise as soon as it ends.
+	 */
+	private Consumer<Noise> sink;
+	private int channelIndex;
+	/**
+	 * Magnitude from which on a sample counts as clipped.
+	 */
+	private int threshold;
+	private long mergeSamples;
+	/**
+	 * Position of the next sample.
+	 */
+	private long position;
+	private long runStart;
+	private int runLength;
+	/**
+	 * Current noise, which is still extended by following runs.
+	 */
+	private long noiseStart = -1;
+	private long noiseEnd;
+	private long clippedSamples;
+
+	public ClippingSearch() {
+		this(DEFAULT_MIN_RUN_LENGTH, DEFAULT_MERGE_DISTANCE);
+	}
 
-public class ClippingSearch implements NoiseSearch {
+	/**
+	 * @param minRunLength - Minimum number of consecutive clipped samples.
+	 * @param mergeDistance - Maximum distance in seconds between merged runs.
+	 */
+	public ClippingSearch(int minRunLength, double mergeDistance) {
+		if(minRunLength <= 0 || mergeDistance < 0) {
+			throw new IllegalArgumentException("Run length has to be positive and the merge distance musn't be negative");
+		}
+		this.minRunLength = minRunLength;
+		this.mergeDistance = mergeDistance;
+	}
+
+	@Override
+	public void start(AudioChannel channel, long position, Consumer<Noise> sink) {
+		this.sink = sink;
+		channelIndex = channel.getIndex();
+		threshold = getThreshold(channel.getBitDepth());
+		mergeSamples = (long) (mergeDistance * channel.getSampleRate());
+		this.position = position;
+		runLength = 0;
+		noiseStart = -1;
+		clippedSamples = 0;
+	}
+
+	@Override
+	public void onBlock(short[] samples, int length) {
+		if(getPeak(samples, length) < threshold) {
+			//The block can only end a run, which started in the previous block
+			if(runLength > 0) {
+				endRun();
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				int sample = samples[i];
+				if((sample ^ (sample >> 31)) >= threshold) {
+					if(runLength == 0) {
+						runStart = position + i;
+					}
+					runLength++;
+				} else if(runLength > 0) {
+					endRun();
+				}
+			}
+		}
+		position += length;
+		//Publish the current noise as soon as no further run can be merged into it
+		if(noiseStart >= 0 && runLength == 0 && position - noiseEnd > mergeSamples) {
+			endNoise();
+		}
+	}
 
 	@Override
-	public Noise search(AudioData data) {
-		// TODO Auto-generated method stub
-		return null;
+	public BitSet getCandidates(CoarseChannel coarse) {
+		int limit = getThreshold(coarse.getChannel().getBitDepth());
+		BitSet candidates = new BitSet(coarse.getBlockCount());
+		for (int i = 0; i < coarse.getBlockCount(); i++) {
+			if(coarse.getPeak(i) >= limit) {
+				candidates.set(i);
+			}
+		}
+		return candidates;
 	}
 
+	@Override
+	public boolean isIdle() {
+		return runLength == 0 && noiseStart < 0;
+	}
+
+	@Override
+	public void finish() {
+		if(runLength > 0) {
+			endRun();
+		}
+		if(noiseStart >= 0) {
+			endNoise();
+		}
+	}
+
+	/**
+	 * Adds the current run to the current noise, if it is long enough.
+	 */
+	private void endRun() {
+		if(runLength >= minRunLength) {
+			if(noiseStart >= 0 && runStart - noiseEnd > mergeSamples) {
+				endNoise();
+			}
+			if(noiseStart < 0) {
+				noiseStart = runStart;
+				clippedSamples = 0;
+			}
+			noiseEnd = runStart + runLength;
+			clippedSamples += runLength;
+		}
+		runLength = 0;
+	}
+
+	/**
+	 * Reports a noise for the merged runs. The severity is the ratio of
+	 * clipped samples inside of the noise.
+	 */
+	private void endNoise() {
+		long length = noiseEnd - noiseStart;
+		Noise noise = new Noise(NoiseType.Clipping, noiseStart, length, (double) clippedSamples / length);
+		noise.setChannel(channelIndex);
+		sink.accept(noise);
+		noiseStart = -1;
+	}
+
+	/**
+	 * Calculates the largest magnitude of a block. A magnitude of x ^ (x >> 31)
+	 * maps -32768 and 32767 both to 32767 and avoids any branches.
+	 */
+	private static int getPeak(short[] samples, int length) {
+		int peak = 0;
+		for (int i = 0; i < length; i++) {
+			int sample = samples[i];
+			peak = Math.max(peak, sample ^ (sample >> 31));
+		}
+		return peak;
+	}
+
+	/**
+	 * Calculates the magnitude from which on a sample counts as clipped.
+	 * The samples are scaled to 16 bit, so a sample of a file with a lower
+	 * bit depth is at full scale if it is within one step of the original
+	 * resolution from the maximum.
+	 * @param bitDepth - Bit depth of the channel.
+	 * @return Threshold for the 16 bit magnitude.
+	 */
+	private static int getThreshold(int bitDepth) {
+		int step = bitDepth > 0 && bitDepth < 16 ? 1 << (16 - bitDepth) : 1;
+		return Short.MAX_VALUE - step + 1;
+	}
 }
@@ -0,0 +1,190 @@
+package lanr.logic;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.SampleStore;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Reduced version of a channel, which is calculated in a single cheap
+ *         pass over its samples. The channel is split into blocks and the peak
+ *         magnitude and the sum of squares of every block are kept. In
+ *         addition the channel is decimated by averaging consecutive samples,
+ *         which keeps the low frequencies up to a few hundred Hz.<br>
+ *         A {@link CandidateFilter} uses this summary to flag the blocks which
+ *         could contain a noise, so only these have to be searched at full
+ *         resolution.
+ *
+ */
+public class CoarseChannel {
+
+	/**
+	 * Number of samples summarised by a block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 512;
+	/**
+	 * Lowest sample rate of the decimated samples in Hz.
+	 */
+	public static final int DEFAULT_DECIMATED_RATE = 1500;
+
+	private static final int READ_SIZE = AnalysisPipeline.DEFAULT_BLOCK_SIZE;
+
+	private final AudioChannel channel;
+	private final int blockSize;
+	private final long sampleCount;
+	/**
+	 * Largest magnitude of every block.
+	 */
+	private final int[] peaks;
+	private final long[] energies;
+	/**
+	 * Number of samples averaged into one decimated sample.
+	 */
+	private final int decimation;
+	private final short[] decimated;
+
+	/**
+	 * Summarises a channel with the default block size and decimation.
+	 * @param channel - Channel with stored samples.
+	 */
+	public CoarseChannel(AudioChannel channel) {
+		this(channel, DEFAULT_BLOCK_SIZE, Math.max(1, channel.getSampleRate() / DEFAULT_DECIMATED_RATE));
+	}
+
+	/**
+	 * @param channel - Channel with stored samples.
+	 * @param blockSize - Number of samples per block, has to be a divisor of
+	 *            {@link AnalysisPipeline#DEFAULT_BLOCK_SIZE}.
+	 * @param decimation - Number of samples averaged into one decimated sample.
+	 */
+	public CoarseChannel(AudioChannel channel, int blockSize, int decimation) {
+		if(blockSize <= 0 || READ_SIZE % blockSize != 0 || decimation <= 0) {
+			throw new IllegalArgumentException("Block size has to divide " + READ_SIZE + " and the decimation has to be positive");
+		}
+		this.channel = channel;
+		this.blockSize = blockSize;
+		this.decimation = decimation;
+		SampleStore store = channel.getSampleStore();
+		this.sampleCount = store.size();
+		int blockCount = (int) ((sampleCount + blockSize - 1) / blockSize);
+		this.peaks = new int[blockCount];
+		this.energies = new long[blockCount];
+		this.decimated = new short[(int) (sampleCount / decimation)];
+		summarise(store);
+	}
+
+	private void summarise(SampleStore store) {
+		short[] samples = new short[READ_SIZE];
+		long position = 0;
+		int block = 0;
+		int decimatedIndex = 0;
+		int decimationFill = 0;
+		long decimationSum = 0;
+		while (position < sampleCount) {
+			int read = store.read(position, samples, 0, samples.length);
+			if(read <= 0) {
+				break;
+			}
+			for (int offset = 0; offset < read; offset += blockSize, block++) {
+				int end = Math.min(read, offset + blockSize);
+				int peak = 0;
+				long energy = 0;
+				for (int i = offset; i < end; i++) {
+					int sample = samples[i];
+					peak = Math.max(peak, sample ^ (sample >> 31));
+					energy += sample * sample;
+				}
+				peaks[block] = peak;
+				energies[block] = energy;
+			}
+			for (int i = 0; i < read; i++) {
+				decimationSum += samples[i];
+				if(++decimationFill == decimation) {
+					decimated[decimatedIndex++] = (short) (decimationSum / decimation);
+					decimationFill = 0;
+					decimationSum = 0;
+				}
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Converts flagged blocks into ranges of samples. Every range is
+	 * extended by the padding on both sides and ranges which touch each
+	 * other are joined.
+	 * @param candidates - Indices of the flagged blocks.
+	 * @param padding - Number of samples added in front of and after every block.
+	 * @return Ranges as pairs of the first sample and the first sample after the range.
+	 */
+	public List<long[]> getRanges(BitSet candidates, long padding) {
+		List<long[]> ranges = new ArrayList<long[]>();
+		long[] current = null;
+		for (int block = candidates.nextSetBit(0); block >= 0 && block < peaks.length;
+				block = candidates.nextSetBit(block + 1)) {
+			long from = Math.max(0, (long) block * blockSize - padding);
+			long to = Math.min(sampleCount, (long) (block + 1) * blockSize + padding);
+			if(current != null && from <= current[1]) {
+				current[1] = to;
+			} else {
+				current = new long[] { from, to };
+				ranges.add(current);
+			}
+		}
+		return ranges;
+	}
+
+	public AudioChannel getChannel() {
+		return channel;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getBlockCount() {
+		return peaks.length;
+	}
+
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * @param block - Index of the block.
+	 * @return Largest magnitude of the samples of the block.
+	 */
+	public int getPeak(int block) {
+		return peaks[block];
+	}
+
+	/**
+	 * @param block - Index of the block.
+	 * @return Sum of squares of the samples of the block.
+	 */
+	public long getEnergy(int block) {
+		return energies[block];
+	}
+
+	/**
+	 * @return Samples of the channel averaged over {@link #getDecimation()} samples each.
+	 */
+	public short[] getDecimatedSamples() {
+		return decimated;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * @return Sample rate of the decimated samples in Hz.
+	 */
+	public double getDecimatedRate() {
+		return (double) channel.getSampleRate() / decimation;
+	}
+}
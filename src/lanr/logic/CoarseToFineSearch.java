@@ -0,0 +1,132 @@
+package lanr.logic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.AudioData;
+import lanr.logic.model.Noise;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Searches the stored samples of a recording in two stages. First
+ *         every channel is reduced to a {@link CoarseChannel} in a single
+ *         cheap pass. Every search implementing {@link CandidateFilter} flags
+ *         the blocks where its noises could be, and only the ranges around
+ *         these blocks are searched at full resolution by a
+ *         {@link ParallelSearch}. Searches without a filter search the whole
+ *         channel.<br>
+ *         Since most parts of a recording are clean, most of the samples are
+ *         only read once for the summary. The noises found in the flagged
+ *         ranges are the same as when searching the whole channel.
+ *
+ */
+public class CoarseToFineSearch {
+
+	/**
+	 * Time in seconds which is searched around every flagged block.
+	 */
+	public static final double DEFAULT_PADDING = 1;
+
+	private final ForkJoinPool pool;
+	private final List<Supplier<NoiseSearch>> factories;
+	/**
+	 * Fine search of every factory.
+	 */
+	private final List<ParallelSearch> fineSearches = new ArrayList<ParallelSearch>();
+	private final double padding;
+
+	/**
+	 * Creates a search with all available searches on the common pool.
+	 */
+	public CoarseToFineSearch() {
+		this(ForkJoinPool.commonPool(), DetectorRunner.getSearchFactories(), DEFAULT_PADDING);
+	}
+
+	/**
+	 * @param pool - Pool running the searches.
+	 * @param factories - Creates new instances of each search.
+	 * @param padding - Time in seconds which is searched around every flagged
+	 *            block, has to be longer than the history any search depends on.
+	 */
+	public CoarseToFineSearch(ForkJoinPool pool, List<Supplier<NoiseSearch>> factories, double padding) {
+		if(padding < 0) {
+			throw new IllegalArgumentException("The padding musn't be negative");
+		}
+		this.pool = pool;
+		this.factories = factories;
+		this.padding = padding;
+		for(Supplier<NoiseSearch> factory : factories) {
+			fineSearches.add(new ParallelSearch(pool, () -> Collections.singletonList(factory.get()),
+					ParallelSearch.DEFAULT_SEGMENT_LENGTH, padding));
+		}
+	}
+
+	/**
+	 * Searches all channels and stores the found noises in them.
+	 * @param data - Audio data with stored samples.
+	 */
+	public void search(AudioData data) {
+		List<ChannelTask> tasks = new ArrayList<ChannelTask>();
+		for(AudioChannel channel : data.getAllChannel()) {
+			tasks.add(new ChannelTask(channel));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		for (int i = 0; i < tasks.size(); i++) {
+			data.getAllChannel().get(i).setFoundNoise(tasks.get(i).join());
+		}
+	}
+
+	/**
+	 * Searches a single channel.
+	 * @param channel - Channel with stored samples.
+	 * @return Found noises ordered by their location.
+	 */
+	public List<Noise> search(AudioChannel channel) {
+		return pool.invoke(new ChannelTask(channel));
+	}
+
+	/**
+	 * Summarises a channel and runs the fine search of every search on its candidates.
+	 */
+	private class ChannelTask extends RecursiveTask<List<Noise>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final AudioChannel channel;
+
+		ChannelTask(AudioChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		protected List<Noise> compute() {
+			CoarseChannel coarse = new CoarseChannel(channel);
+			long paddingSamples = (long) (padding * channel.getSampleRate());
+			List<RecursiveTask<List<Noise>>> tasks = new ArrayList<RecursiveTask<List<Noise>>>();
+			for (int i = 0; i < factories.size(); i++) {
+				NoiseSearch search = factories.get(i).get();
+				List<long[]> ranges;
+				if(search instanceof CandidateFilter) {
+					ranges = coarse.getRanges(((CandidateFilter) search).getCandidates(coarse), paddingSamples);
+				} else {
+					ranges = Collections.singletonList(new long[] { 0, coarse.getSampleCount() });
+				}
+				tasks.add(fineSearches.get(i).createTask(channel, ranges));
+			}
+			invokeAll(tasks);
+			List<Noise> found = new ArrayList<Noise>();
+			for(RecursiveTask<List<Noise>> task : tasks) {
+				found.addAll(task.join());
+			}
+			found.sort(ParallelSearch.NOISE_ORDER);
+			return found;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package lanr.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.Noise;
+import lanr.logic.model.SampleBlock;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Runs all {@link NoiseSearch}es of a channel in a single pass. Every
+ *         block is handed to all searches directly after each other, while it
+ *         is still in the cache, instead of reading the channel once per
+ *         search. A {@link FeatureEngine} is only created if one of the
+ *         searches opts in by implementing {@link SpectrumConsumer}, so all of
+ *         them share the same transform with the default frame size, and
+ *         searches working on the samples alone never pay for it.<br>
+ *         The runner is used as a consumer of the {@link AnalysisPipeline} and
+ *         adds every noise to the channel as soon as it ends, a runner for a
+ *         part of a channel collects them instead.
+ *
+ */
+public class DetectorRunner implements SampleBlockConsumer {
+
+	private final AudioChannel channel;
+	private final List<NoiseSearch> searches;
+	private final FeatureEngine featureEngine;
+	/**
+	 * Noises which have not been passed to a sink.
+	 */
+	private final List<Noise> found = new ArrayList<Noise>();
+
+	/**
+	 * Creates a runner with all available searches, which replaces the
+	 * noises of the channel with the noises found by the searches.
+	 * @param channel - Channel to be searched.
+	 */
+	public DetectorRunner(AudioChannel channel) {
+		this(channel, createSearches(), 0, channel::addNoise);
+		channel.clearFoundNoise();
+	}
+
+	/**
+	 * @param channel - Channel to be searched.
+	 * @param searches - Searches which are not used by any other runner.
+	 */
+	public DetectorRunner(AudioChannel channel, List<NoiseSearch> searches) {
+		this(channel, searches, 0);
+	}
+
+	/**
+	 * Creates a runner for a part of a channel, which collects the found noises.
+	 * @param channel - Channel to be searched.
+	 * @param searches - Searches which are not used by any other runner.
+	 * @param position - Index of the first sample passed to the runner.
+	 */
+	public DetectorRunner(AudioChannel channel, List<NoiseSearch> searches, long position) {
+		this(channel, searches, position, null);
+	}
+
+	/**
+	 * @param channel - Channel to be searched.
+	 * @param searches - Searches which are not used by any other runner.
+	 * @param position - Index of the first sample passed to the runner.
+	 * @param sink - Receives every noise as soon as it ends, null if the noises should be collected.
+	 */
+	public DetectorRunner(AudioChannel channel, List<NoiseSearch> searches, long position, Consumer<Noise> sink) {
+		this.channel = channel;
+		this.searches = searches;
+		Consumer<Noise> target = sink == null ? found::add : sink;
+		FeatureEngine engine = null;
+		for(NoiseSearch search : searches) {
+			search.start(channel, position, target);
+			if(search instanceof SpectrumConsumer) {
+				if(engine == null) {
+					engine = new FeatureEngine(channel);
+					engine.setPosition(position);
+				}
+				engine.addConsumer((SpectrumConsumer) search);
+			}
+		}
+		this.featureEngine = engine;
+	}
+
+	/**
+	 * @return New instances of all available searches.
+	 */
+	public static List<NoiseSearch> createSearches() {
+		List<NoiseSearch> searches = new ArrayList<NoiseSearch>();
+		for(Supplier<NoiseSearch> factory : getSearchFactories()) {
+			searches.add(factory.get());
+		}
+		return searches;
+	}
+
+	/**
+	 * @return Factories of all available searches.
+	 */
+	public static List<Supplier<NoiseSearch>> getSearchFactories() {
+		return Arrays.<Supplier<NoiseSearch>>asList(ClippingSearch::new, HumSearch::new, SilenceSearch::new);
+	}
+
+	@Override
+	public void consume(SampleBlock block) {
+		process(block.getSamples(), block.getLength());
+	}
+
+	/**
+	 * Passes the next samples of the channel to all searches.
+	 * @param samples - Samples following the previous ones.
+	 * @param length - Number of samples.
+	 */
+	public void process(short[] samples, int length) {
+		for(NoiseSearch search : searches) {
+			search.onBlock(samples, length);
+		}
+		if(featureEngine != null) {
+			featureEngine.process(samples, 0, length);
+		}
+	}
+
+	/**
+	 * @return True if none of the searches has a noise in progress.
+	 */
+	public boolean isIdle() {
+		for(NoiseSearch search : searches) {
+			if(!search.isIdle()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Ends all searches, adds the collected noises to the channel and marks
+	 * it as analyzed.
+	 */
+	@Override
+	public void finish() {
+		channel.addNoises(collect());
+	}
+
+	/**
+	 * Ends all searches.
+	 * @return Noises found by all searches, which have not been passed to a sink.
+	 */
+	public List<Noise> collect() {
+		if(featureEngine != null) {
+			featureEngine.finish();
+		}
+		for(NoiseSearch search : searches) {
+			search.finish();
+		}
+		return found;
+	}
+}
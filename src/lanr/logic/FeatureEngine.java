@@ -0,0 +1,226 @@
+package lanr.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jwave.Transform;
+import jwave.transforms.FastWaveletTransform;
+import jwave.transforms.wavelets.coiflet.Coiflet4;
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.SampleBlock;
+import lanr.logic.model.Spectrum;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Calculates the spectra of overlapping windowed frames of a single
+ *         channel once and hands them to every registered
+ *         {@link SpectrumConsumer}, so several spectral detectors do not
+ *         transform the same samples again.<br>
+ *         The latest spectra are kept in a bounded ring, consumers can look
+ *         back at previous frames with {@link #getSpectrum(int)}. The spectra
+ *         of the ring are reused for new frames, which keeps the engine free
+ *         of allocations while it runs. Only the wavelet transform allocates
+ *         the coefficients of every frame, if they are calculated.<br>
+ *         Frames start at multiples of the hop size, so engines searching
+ *         different parts of a channel calculate the same frames.
+ *
+ */
+public class FeatureEngine implements SampleBlockConsumer {
+
+	/**
+	 * Number of samples per frame.
+	 */
+	public static final int DEFAULT_FRAME_SIZE = 2048;
+	/**
+	 * Number of samples between the beginnings of two frames.
+	 */
+	public static final int DEFAULT_HOP_SIZE = 1024;
+	/**
+	 * Number of spectra kept in the history.
+	 */
+	public static final int DEFAULT_HISTORY_SIZE = 32;
+
+	private final List<SpectrumConsumer> consumers = new ArrayList<SpectrumConsumer>();
+	private final FourierTransform fourierTransform;
+	/**
+	 * Calculates the wavelet coefficients of each frame, null if they are not needed.
+	 */
+	private final Transform waveletTransform;
+	private final int frameSize;
+	private final int hopSize;
+	private final double[] window;
+	/**
+	 * Scales the magnitudes, so a full scale sinusoid has a magnitude of one.
+	 */
+	private final double scale;
+	/**
+	 * Samples of the current frame.
+	 */
+	private final double[] frame;
+	private final double[] real;
+	private final double[] imaginary;
+	private final Spectrum[] history;
+	/**
+	 * Number of spectra calculated so far.
+	 */
+	private long spectrumCount = 0;
+	private int frameFill = 0;
+	/**
+	 * Number of samples which are skipped before the first frame.
+	 */
+	private int skip = 0;
+	/**
+	 * Position of the first sample of the current frame.
+	 */
+	private long framePosition = 0;
+
+	/**
+	 * Creates an engine with the default frame size, hop size and history.
+	 * @param channel - Channel whose samples are transformed.
+	 */
+	public FeatureEngine(AudioChannel channel) {
+		this(channel.getSampleRate(), DEFAULT_FRAME_SIZE, DEFAULT_HOP_SIZE, DEFAULT_HISTORY_SIZE, false);
+	}
+
+	/**
+	 * @param sampleRate - Sample rate of the channel.
+	 * @param frameSize - Number of samples per frame, has to be a power of two.
+	 * @param hopSize - Number of samples between two frames.
+	 * @param historySize - Number of spectra kept in the history.
+	 * @param wavelets - True if the wavelet coefficients of the frames should be calculated.
+	 */
+	public FeatureEngine(int sampleRate, int frameSize, int hopSize, int historySize, boolean wavelets) {
+		if(hopSize <= 0 || hopSize > frameSize || historySize <= 0) {
+			throw new IllegalArgumentException("Hop size has to be between 1 and the frame size and the history musn't be empty");
+		}
+		this.fourierTransform = new FourierTransform(frameSize);
+		this.waveletTransform = wavelets ? new Transform(new FastWaveletTransform(new Coiflet4())) : null;
+		this.frameSize = frameSize;
+		this.hopSize = hopSize;
+		this.frame = new double[frameSize];
+		this.real = new double[frameSize];
+		this.imaginary = new double[frameSize];
+		//Hann window
+		this.window = new double[frameSize];
+		double sum = 0;
+		for (int i = 0; i < frameSize; i++) {
+			window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / frameSize);
+			sum += window[i];
+		}
+		this.scale = 2 / (sum * 32768);
+		this.history = new Spectrum[historySize];
+		for (int i = 0; i < historySize; i++) {
+			history[i] = new Spectrum(frameSize, sampleRate);
+		}
+	}
+
+	/**
+	 * Registers a consumer for the spectra of the channel.
+	 * @param consumer - Consumer receiving every spectrum.
+	 */
+	public void addConsumer(SpectrumConsumer consumer) {
+		consumers.add(consumer);
+	}
+
+	@Override
+	public void consume(SampleBlock block) {
+		process(block.getSamples(), 0, block.getLength());
+	}
+
+	/**
+	 * Adds the next samples of the channel and calculates the spectra of all
+	 * frames completed by them.
+	 * @param samples - Array containing the samples.
+	 * @param offset - Index of the first sample.
+	 * @param length - Number of samples.
+	 */
+	public void process(short[] samples, int offset, int length) {
+		int end = offset + length;
+		int skipped = Math.min(skip, length);
+		skip -= skipped;
+		offset += skipped;
+		while (offset < end) {
+			int count = Math.min(end - offset, frameSize - frameFill);
+			for (int i = 0; i < count; i++) {
+				frame[frameFill + i] = samples[offset + i];
+			}
+			frameFill += count;
+			offset += count;
+			if(frameFill == frameSize) {
+				publish(calculateSpectrum());
+				//Keep the overlapping part for the next frame
+				System.arraycopy(frame, hopSize, frame, 0, frameSize - hopSize);
+				frameFill = frameSize - hopSize;
+				framePosition += hopSize;
+			}
+		}
+	}
+
+	@Override
+	public void finish() {
+		for(SpectrumConsumer consumer : consumers) {
+			consumer.endOfSpectra();
+		}
+	}
+
+	/**
+	 * Returns a spectrum of the history.
+	 * @param age - Number of frames before the latest frame, 0 returns the latest spectrum.
+	 * @return Spectrum or null if it is not part of the history.
+	 */
+	public Spectrum getSpectrum(int age) {
+		if(age < 0 || age >= history.length || age >= spectrumCount) {
+			return null;
+		}
+		return history[(int) ((spectrumCount - 1 - age) % history.length)];
+	}
+
+	/**
+	 * Sets the index of the first sample passed to the engine, if the engine
+	 * does not start at the beginning of the channel. Samples in front of
+	 * the next multiple of the hop size are skipped.
+	 * @param position - Index of the next sample.
+	 */
+	public void setPosition(long position) {
+		if(frameFill != 0 || spectrumCount != 0) {
+			throw new IllegalStateException("Position has to be set before any samples are processed");
+		}
+		int offset = (int) (position % hopSize);
+		this.skip = offset == 0 ? 0 : hopSize - offset;
+		this.framePosition = position + skip;
+	}
+
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	public int getHopSize() {
+		return hopSize;
+	}
+
+	private Spectrum calculateSpectrum() {
+		Spectrum spectrum = history[(int) (spectrumCount % history.length)];
+		spectrumCount++;
+		for (int i = 0; i < frameSize; i++) {
+			real[i] = frame[i] * window[i];
+			imaginary[i] = 0;
+		}
+		fourierTransform.transform(real, imaginary);
+		float[] magnitudes = spectrum.getMagnitudes();
+		for (int i = 0; i < magnitudes.length; i++) {
+			magnitudes[i] = (float) (Math.sqrt(real[i] * real[i] + imaginary[i] * imaginary[i]) * scale);
+		}
+		if(waveletTransform != null) {
+			spectrum.setWaveletCoefficients(waveletTransform.forward(frame));
+		}
+		spectrum.setPosition(framePosition);
+		return spectrum;
+	}
+
+	private void publish(Spectrum spectrum) {
+		for(SpectrumConsumer consumer : consumers) {
+			consumer.consume(spectrum, this);
+		}
+	}
+}
@@ -4,21 +4,34 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+import io.humble.ferry.Buffer;
+import io.humble.video.AudioFormat;
 import io.humble.video.Decoder;
 import io.humble.video.Demuxer;
 import io.humble.video.DemuxerStream;
+import io.humble.video.Global;
 import io.humble.video.MediaAudio;
 import io.humble.video.MediaDescriptor;
 import io.humble.video.MediaPacket;
 import io.humble.video.Rational;
-import io.humble.video.javaxsound.MediaAudioConverter;
-import io.humble.video.javaxsound.MediaAudioConverterFactory;
 import lanr.logic.model.AudioChannel;
 import lanr.logic.model.AudioData;
 import lanr.logic.model.LANRFileException;
+import lanr.logic.model.SampleBuffer;
+import lanr.logic.model.SampleStore;
 
 public class FileReader {
 
@@ -29,6 +42,11 @@ public class FileReader {
 	public static final String DECODING_STARTED_PROPERTY = "dStart";
 	public static final String DECODING_ENDED_PROPERTY = "dEnd";
 	
+	/**
+	 * Time in microseconds which is decoded in front of a segment.
+	 */
+	private static final long SEGMENT_PREROLL = 500000;
+	
 	/**
 	 * Creates a {@link AudioData} object containing data about the 
 	 * @param path
@@ -50,57 +68,104 @@ public class FileReader {
 		
 		state.firePropertyChange(LOADING_STARTED_PROPERTY, null, path);
 		
+		//Uncompressed wave files are read directly without opening a demuxer
+		WaveFile wave = WaveFile.read(Paths.get(path));
+		if(wave != null) {
+			for (int c = 0; c < wave.getChannels(); c++) {
+				AudioChannel channel = new AudioChannel(wave.getBitDepth(), wave.getSampleRate(), c, 0, c,
+						wave.getFrameCount());
+				channel.setParent(data);
+				audioChannels.add(channel);
+			}
+			state.firePropertyChange(LOADING_ENDED_PROPERTY, null, null);
+			return data;
+		}
+		
 		/*
 		 * Start by creating a container object, in this case a demuxer since we are
 		 * reading, to get audio data from.
 		 */
 		Demuxer demuxer = Demuxer.make();
 		demuxer.open(path, null, false, true, null, null);
+		try {
+			// Iterate through all audio streams
+			int numStreams = demuxer.getNumStreams();
+			for (int i = 0; i < numStreams; i++) {
+				final DemuxerStream stream = demuxer.getStream(i);
+				final Decoder decoder = stream.getDecoder();
+				// Check if the found stream is an audio stream
+				if (decoder != null && decoder.getCodecType() == MediaDescriptor.Type.MEDIA_AUDIO) {
+					decoder.open(null, null);
+					final MediaAudio samples = MediaAudio.make(
+							decoder.getFrameSize(),
+							decoder.getSampleRate(),
+							decoder.getChannels(),
+							decoder.getChannelLayout(),
+							decoder.getSampleFormat());
+					int sampleRate;
+					try {
+						sampleRate = samples.getSampleRate();
+					} finally {
+						samples.delete();
+					}
 
-		// Iterate through all audio streams
-		int numStreams = demuxer.getNumStreams();
-		for (int i = 0; i < numStreams; i++) {
-			final DemuxerStream stream = demuxer.getStream(i);
-			final Decoder decoder = stream.getDecoder();
-			// Check if the found stream is an audio stream
-			if (decoder != null && decoder.getCodecType() == MediaDescriptor.Type.MEDIA_AUDIO) {
-				decoder.open(null, null);
-				final MediaAudio samples = MediaAudio.make(
-						decoder.getFrameSize(),
-						decoder.getSampleRate(),
-						decoder.getChannels(),
-						decoder.getChannelLayout(),
-						decoder.getSampleFormat());
-
-				//Returns not the correct bit value, therefore *4 instead of 8
-				int bitDepth = samples.getBytesPerSample() * 4; 
-				int sampleRate = samples.getSampleRate();
-				//Calculate the time of the stream in seconds
-				Rational r = stream.getTimeBase();	
-				long length = stream.getDuration() / r.getDenominator();		
-				AudioChannel channel = new AudioChannel(bitDepth, sampleRate, i, length);
-				audioChannels.add(channel);
+					int bitDepth = AudioFormat.getBytesPerSample(decoder.getSampleFormat()) * 8;
+					//Estimate the number of samples from the duration of the stream
+					long frameCount = Math.max(0, getSampleCount(stream, sampleRate));
+					//Every channel of the stream is analysed on its own
+					for (int c = 0; c < decoder.getChannels(); c++) {
+						AudioChannel channel = new AudioChannel(bitDepth, sampleRate, audioChannels.size(), i, c,
+								frameCount);
+						channel.setParent(data);
+						audioChannels.add(channel);
+					}
+				}
 			}
+			if (audioChannels.isEmpty()) {
+				throw new LANRFileException("No audio stream could be found in " + path);
+			}
+		} finally {
+			demuxer.close();
 		}
-		if (audioChannels.isEmpty()) {
-			throw new LANRFileException("No audio stream could be found in " + path);
-		}
-		demuxer.close();
 		state.firePropertyChange(LOADING_ENDED_PROPERTY, null, null);
 		return data;
 	}
 	
 	/**
-	 * @param path
+	 * Decodes the given audio data without any additional consumers.
+	 * @param data
+	 * @param listener
 	 * @throws IOException
 	 * @throws InterruptedException
-	 * @throws LANRFileException
 	 */
 	public static void readFile(AudioData data, PropertyChangeListener listener)
 			throws InterruptedException, IOException {
+		AnalysisPipeline pipeline = new AnalysisPipeline(data);
+		pipeline.start();
+		readFile(data, listener, pipeline);
+	}
+	
+	/**
+	 * Decodes the given audio data and streams the samples into the pipeline.
+	 * The pipeline has to be started before and will be closed after all
+	 * samples have been written. Returns when all consumers of the pipeline
+	 * are finished.
+	 * @param data
+	 * @param listener
+	 * @param pipeline - Started pipeline receiving the decoded samples.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void readFile(AudioData data, PropertyChangeListener listener, AnalysisPipeline pipeline)
+			throws InterruptedException, IOException {
 		if(data == null) {
 			throw new IllegalArgumentException("Audio data musn't be null");
 		}
+		WaveFile wave = WaveFile.read(Paths.get(data.getPath()));
+		if(wave != null) {
+			readWaveFile(data, listener, pipeline, wave);
+			return;
+		}
 		PropertyChangeSupport state = new PropertyChangeSupport(data);
 		if(listener != null) {
 			state.addPropertyChangeListener(listener);				
@@ -109,21 +174,448 @@ public class FileReader {
 
 		Demuxer demuxer = Demuxer.make();
 		demuxer.open(data.getPath(), null, false, true, null, null);
-
-		//Read the data for all channel
-		for(AudioChannel channel : data.getAllChannel()) {
-			final DemuxerStream stream = demuxer.getStream(channel.getIndex());
-			final Decoder decoder = stream.getDecoder();
-			readAudioChannelData(channel, demuxer, decoder);
+		//Open a decoder for every channel so the container only has to be read once
+		Map<Integer, ChannelDecoder> decoders = new HashMap<Integer, ChannelDecoder>();
+		try {
+			for(AudioChannel channel : data.getAllChannel()) {
+				channel.setSampleStore(SampleStore.create(channel.getFrameCount()));
+			}
+			openDecoders(demuxer, data, decoders,
+					channel -> (samples, length, position) -> pipeline.write(channel, samples, 0, length));
 			
+			final MediaPacket packet = MediaPacket.make();
+			// Read the packets and hand them to the decoder of their stream
+			while (demuxer.read(packet) >= 0) {
+				if(interrupted) {
+					pipeline.cancel();
+					return;
+				}
+				ChannelDecoder decoder = decoders.get(packet.getStreamIndex());
+				if (decoder != null) {
+					decoder.decode(packet);
+				}
+			}
+			//Decode the frames still buffered inside the decoders
+			for(ChannelDecoder decoder : decoders.values()) {
+				decoder.flush();
+			}
+		} catch (IOException | RuntimeException e) {
+			pipeline.cancel();
+			throw e;
+		} finally {
+			for(ChannelDecoder decoder : decoders.values()) {
+				decoder.close();
+			}
+			demuxer.close();
+			pipeline.close();
 		}
+		pipeline.await();
+		updateFrameCounts(data);
 		data.setAnalyzed(true);
-		demuxer.close();
 		state.firePropertyChange(DECODING_ENDED_PROPERTY, null, null);
 	}
 
-	private static void readAudioChannelData(AudioChannel channel, Demuxer demuxer, Decoder audioDecoder)
+	/**
+	 * Maps the samples of an uncompressed wave file as the sample store of
+	 * its channel and streams them into the pipeline. The file is neither
+	 * decoded nor copied into memory.
+	 * @param data
+	 * @param listener
+	 * @param pipeline - Started pipeline receiving the samples.
+	 * @param wave - Header of the wave file.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static void readWaveFile(AudioData data, PropertyChangeListener listener,
+			AnalysisPipeline pipeline, WaveFile wave) throws IOException, InterruptedException {
+		try {
+			for(AudioChannel channel : data.getAllChannel()) {
+				channel.setSampleStore(wave.map(channel.getStreamChannel()));
+			}
+		} catch (IOException | RuntimeException e) {
+			pipeline.cancel();
+			pipeline.close();
+			throw e;
+		}
+		replayFile(data, listener, pipeline);
+	}
+	
+	/**
+	 * @param data
+	 * @return True if the samples of the file are read directly instead of being decoded.
+	 * @throws IOException
+	 */
+	public static boolean isWaveFile(AudioData data) throws IOException {
+		return WaveFile.read(Paths.get(data.getPath())) != null;
+	}
+	
+	/**
+	 * Streams the samples already stored in the channels, for example loaded
+	 * from the {@link PcmCache}, without any additional consumers.
+	 * @param data
+	 * @param listener
+	 * @throws InterruptedException
+	 */
+	public static void replayFile(AudioData data, PropertyChangeListener listener) throws InterruptedException {
+		AnalysisPipeline pipeline = new AnalysisPipeline(data);
+		pipeline.start();
+		replayFile(data, listener, pipeline);
+	}
+	
+	/**
+	 * Streams the samples already stored in the channels into the pipeline
+	 * instead of decoding the file. Returns when all consumers of the
+	 * pipeline are finished.
+	 * @param data
+	 * @param listener
+	 * @param pipeline - Started pipeline receiving the stored samples.
+	 * @throws InterruptedException
+	 */
+	public static void replayFile(AudioData data, PropertyChangeListener listener, AnalysisPipeline pipeline)
+			throws InterruptedException {
+		if(data == null) {
+			throw new IllegalArgumentException("Audio data musn't be null");
+		}
+		PropertyChangeSupport state = new PropertyChangeSupport(data);
+		if(listener != null) {
+			state.addPropertyChangeListener(listener);				
+		}
+		state.firePropertyChange(DECODING_STARTED_PROPERTY, null, null);
+		try {
+			for(AudioChannel channel : data.getAllChannel()) {
+				pipeline.replay(channel);
+			}
+		} finally {
+			pipeline.close();
+		}
+		pipeline.await();
+		updateFrameCounts(data);
+		data.setAnalyzed(true);
+		state.firePropertyChange(DECODING_ENDED_PROPERTY, null, null);
+	}
+	
+	/**
+	 * Decodes the given audio data in parallel segments without any additional consumers.
+	 * @param data
+	 * @param listener
+	 * @param segmentCount - Number of segments decoded in parallel.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void readFileSegmented(AudioData data, PropertyChangeListener listener, int segmentCount)
 			throws InterruptedException, IOException {
+		AnalysisPipeline pipeline = new AnalysisPipeline(data);
+		pipeline.start();
+		readFileSegmented(data, listener, pipeline, segmentCount);
+	}
+	
+	/**
+	 * Decodes the given audio data by splitting it into time segments which
+	 * are decoded in parallel, each with its own demuxer. The samples are
+	 * written directly into the sample stores of the channels and streamed
+	 * into the pipeline afterwards. Falls back to {@link #readFile} if the
+	 * duration of a stream is unknown.
+	 * @param data
+	 * @param listener
+	 * @param pipeline - Started pipeline receiving the decoded samples.
+	 * @param segmentCount - Number of segments decoded in parallel.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void readFileSegmented(AudioData data, PropertyChangeListener listener,
+			AnalysisPipeline pipeline, int segmentCount) throws InterruptedException, IOException {
+		if(data == null) {
+			throw new IllegalArgumentException("Audio data musn't be null");
+		}
+		if(segmentCount <= 1 || isWaveFile(data)) {
+			readFile(data, listener, pipeline);
+			return;
+		}
+		//Determine the exact number of samples of each stream
+		Map<AudioChannel, Long> sampleCounts = new HashMap<AudioChannel, Long>();
+		Demuxer demuxer = Demuxer.make();
+		demuxer.open(data.getPath(), null, false, true, null, null);
+		long duration = demuxer.getDuration();
+		try {
+			for(AudioChannel channel : data.getAllChannel()) {
+				sampleCounts.put(channel, getSampleCount(demuxer.getStream(channel.getStreamIndex()), channel.getSampleRate()));
+			}
+		} finally {
+			demuxer.close();
+		}
+		if(duration <= 0 || sampleCounts.values().stream().anyMatch(count -> count <= 0)) {
+			readFile(data, listener, pipeline);
+			return;
+		}
+		//Position following the last sample which has actually been decoded
+		Map<AudioChannel, AtomicLong> written = new HashMap<AudioChannel, AtomicLong>();
+		for(AudioChannel channel : data.getAllChannel()) {
+			SampleStore store = SampleStore.create(sampleCounts.get(channel));
+			store.resize(sampleCounts.get(channel));
+			channel.setSampleStore(store);
+			written.put(channel, new AtomicLong());
+		}
+		
+		PropertyChangeSupport state = new PropertyChangeSupport(data);
+		if(listener != null) {
+			state.addPropertyChangeListener(listener);				
+		}
+		state.firePropertyChange(DECODING_STARTED_PROPERTY, null, null);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(segmentCount);
+		try {
+			List<Future<Void>> segments = new ArrayList<Future<Void>>();
+			for (int i = 0; i < segmentCount; i++) {
+				long start = duration * i / segmentCount;
+				//The last segment is decoded until the end of the file
+				long end = i == segmentCount - 1 ? Long.MAX_VALUE : duration * (i + 1) / segmentCount;
+				segments.add(executor.submit(() -> {
+					readSegment(data, start, end, written);
+					return null;
+				}));
+			}
+			for(Future<Void> segment : segments) {
+				segment.get();
+			}
+			if(interrupted) {
+				pipeline.cancel();
+				return;
+			}
+			for(AudioChannel channel : data.getAllChannel()) {
+				//The stores are sized by the estimate of the container, the silent rest is removed
+				SampleStore store = channel.getSampleStore();
+				if(written.get(channel).get() < store.size()) {
+					store.resize(written.get(channel).get());
+				}
+				pipeline.replay(channel);
+			}
+		} catch (ExecutionException e) {
+			pipeline.cancel();
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Could not decode " + data.getPath(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+			pipeline.close();
+		}
+		pipeline.await();
+		updateFrameCounts(data);
+		data.setAnalyzed(true);
+		state.firePropertyChange(DECODING_ENDED_PROPERTY, null, null);
+	}
+	
+	/**
+	 * Decodes a time segment of all channels into their sample stores.
+	 * @param data
+	 * @param start - Beginning of the segment in microseconds.
+	 * @param end - End of the segment in microseconds.
+	 * @param written - Position following the last written sample of each channel, updated by the segment.
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private static void readSegment(AudioData data, long start, long end, Map<AudioChannel, AtomicLong> written)
+			throws InterruptedException, IOException {
+		Demuxer demuxer = Demuxer.make();
+		demuxer.open(data.getPath(), null, false, true, null, null);
+		Map<Integer, ChannelDecoder> decoders = new HashMap<Integer, ChannelDecoder>();
+		try {
+			openDecoders(demuxer, data, decoders, channel -> {
+				long firstSample = toSamples(start, channel.getSampleRate());
+				long lastSample = end == Long.MAX_VALUE ? Long.MAX_VALUE : toSamples(end, channel.getSampleRate());
+				SampleStore store = channel.getSampleStore();
+				AtomicLong channelWritten = written.get(channel);
+				return (samples, length, position) -> {
+					//Only keep the part of the frame which belongs to this segment
+					long from = Math.max(position, firstSample);
+					long to = Math.min(position + length, lastSample);
+					if(from < to) {
+						if(to > store.size()) {
+							synchronized (store) {
+								if(to > store.size()) {
+									store.resize(to);
+								}
+							}
+						}
+						store.write(from, samples, (int) (from - position), (int) (to - from));
+						channelWritten.accumulateAndGet(to, Math::max);
+					}
+				};
+			});
+			if(start > 0) {
+				//Start early, so the decoders are in a valid state at the beginning of the segment
+				long seekPosition = Math.max(0, start - SEGMENT_PREROLL);
+				demuxer.seek(-1, Long.MIN_VALUE, seekPosition, seekPosition, 0);
+				//Frames without a time stamp are placed after the seek position instead of the beginning of the file
+				for(ChannelDecoder decoder : decoders.values()) {
+					decoder.setPosition(toSamples(seekPosition, decoder.getSampleRate()));
+				}
+			}
+			final MediaPacket packet = MediaPacket.make();
+			while (demuxer.read(packet) >= 0) {
+				if(interrupted) {
+					return;
+				}
+				ChannelDecoder decoder = decoders.get(packet.getStreamIndex());
+				if (decoder != null) {
+					decoder.decode(packet);
+				}
+				if(isSegmentDecoded(decoders.values(), end)) {
+					return;
+				}
+			}
+			for(ChannelDecoder decoder : decoders.values()) {
+				decoder.flush();
+			}
+		} finally {
+			for(ChannelDecoder decoder : decoders.values()) {
+				decoder.close();
+			}
+			demuxer.close();
+		}
+	}
+	
+	/**
+	 * Opens a decoder for every stream containing channels of the file.
+	 * @param demuxer - Opened demuxer of the file.
+	 * @param data
+	 * @param decoders - Receives the decoders by the index of their stream.
+	 * @param writers - Creates the writer receiving the samples of a channel.
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	private static void openDecoders(Demuxer demuxer, AudioData data, Map<Integer, ChannelDecoder> decoders,
+			Function<AudioChannel, FrameWriter> writers) throws InterruptedException, IOException {
+		Map<Integer, List<AudioChannel>> streams = new HashMap<Integer, List<AudioChannel>>();
+		for(AudioChannel channel : data.getAllChannel()) {
+			streams.computeIfAbsent(channel.getStreamIndex(), index -> new ArrayList<AudioChannel>()).add(channel);
+		}
+		for(Map.Entry<Integer, List<AudioChannel>> stream : streams.entrySet()) {
+			int channelCount = 0;
+			for(AudioChannel channel : stream.getValue()) {
+				channelCount = Math.max(channelCount, channel.getStreamChannel() + 1);
+			}
+			FrameWriter[] streamWriters = new FrameWriter[channelCount];
+			for(AudioChannel channel : stream.getValue()) {
+				streamWriters[channel.getStreamChannel()] = writers.apply(channel);
+			}
+			decoders.put(stream.getKey(), new ChannelDecoder(demuxer.getStream(stream.getKey()),
+					stream.getValue().get(0).getSampleRate(), streamWriters));
+		}
+	}
+	
+	/**
+	 * @return True if all decoders passed the end of the segment.
+	 */
+	private static boolean isSegmentDecoded(Collection<ChannelDecoder> decoders, long end) {
+		if(end == Long.MAX_VALUE) {
+			return false;
+		}
+		for(ChannelDecoder decoder : decoders) {
+			if(decoder.getPosition() < toSamples(end, decoder.getSampleRate())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Replaces the estimated number of samples of all channels with the
+	 * number of samples which have actually been read.
+	 * @param data
+	 */
+	private static void updateFrameCounts(AudioData data) {
+		for(AudioChannel channel : data.getAllChannel()) {
+			channel.setFrameCount(channel.getSampleCount());
+		}
+	}
+	
+	/**
+	 * Calculates the number of samples of a stream from its duration.
+	 * @param stream
+	 * @param sampleRate
+	 * @return Number of samples or -1 if the duration is unknown.
+	 */
+	private static long getSampleCount(DemuxerStream stream, int sampleRate) {
+		long duration = stream.getDuration();
+		if(duration == Global.NO_PTS || duration <= 0) {
+			return -1;
+		}
+		return toSamples(duration, stream.getTimeBase(), sampleRate);
+	}
+	
+	/**
+	 * Converts microseconds into a sample index.
+	 */
+	private static long toSamples(long microseconds, int sampleRate) {
+		return microseconds * sampleRate / Global.DEFAULT_PTS_PER_SECOND;
+	}
+	
+	/**
+	 * Converts a time stamp into a sample index.
+	 */
+	private static long toSamples(long timeStamp, Rational timeBase, int sampleRate) {
+		return timeStamp * timeBase.getNumerator() * sampleRate / timeBase.getDenominator();
+	}
+	
+	/**
+	 * Receives the decoded samples of a {@link ChannelDecoder}.
+	 */
+	@FunctionalInterface
+	private interface FrameWriter {
+		/**
+		 * @param samples - Decoded samples of a single channel.
+		 * @param length - Number of samples.
+		 * @param position - Index of the first sample inside of the channel.
+		 * @throws InterruptedException
+		 */
+		void write(short[] samples, int length, long position) throws InterruptedException;
+	}
+
+	/**
+	 * @author Nicolas Bruch
+	 * 
+	 *         Decoder state of a single audio stream. Packets are pushed into
+	 *         it by a demuxing loop and the decoded samples of every channel
+	 *         of the stream are passed to the {@link FrameWriter} of the
+	 *         channel together with their position in the channel.
+	 *
+	 */
+	private static class ChannelDecoder {
+		
+		/**
+		 * Minimum number of samples per channel a decoded frame can hold.
+		 */
+		private static final int MIN_FRAME_SIZE = 1024;
+		
+		private final Decoder decoder;
+		private MediaAudio samples;
+		/**
+		 * Writers of the channels of the stream, null for channels which are not read.
+		 */
+		private final FrameWriter[] writers;
+		private final int sampleRate;
+		/**
+		 * Index of the first sample of the stream, used to convert time stamps to positions.
+		 */
+		private final long firstSample;
+		/**
+		 * Position of the sample following the last decoded frame.
+		 */
+		private long position = 0;
+		private final SampleBuffer.Encoding encoding;
+		private final boolean planar;
+		/**
+		 * True if the packets contain raw PCM samples.
+		 */
+		private final boolean uncompressed;
+		private final int channelCount;
+		/**
+		 * Raw bytes of the current plane and the typed view on them.
+		 */
+		private byte[] rawAudio = new byte[0];
+		private SampleBuffer rawSamples;
+		private short[] convertedAudio = new short[0];
 		
 		/*
 		 * Based on code from
@@ -131,40 +623,177 @@ public class FileReader {
 		 * /main/java/io/humble/video/demos/DecodeAndPlayAudio.java
 		 * 
 		 */
-		audioDecoder.open(null, null);
-		final MediaAudio samples = MediaAudio.make(
-				audioDecoder.getFrameSize(),
-				audioDecoder.getSampleRate(),
-				audioDecoder.getChannels(),
-				audioDecoder.getChannelLayout(),
-				audioDecoder.getSampleFormat());
+		ChannelDecoder(DemuxerStream stream, int sampleRate, FrameWriter[] writers) {
+			this.decoder = stream.getDecoder();
+			this.writers = writers;
+			this.sampleRate = sampleRate;
+			this.firstSample = stream.getStartTime() == Global.NO_PTS ? 0
+					: toSamples(stream.getStartTime(), stream.getTimeBase(), sampleRate);
+			decoder.open(null, null);
+			this.samples = createFrame(decoder.getFrameSize());
+			this.encoding = getEncoding(decoder.getSampleFormat());
+			this.planar = AudioFormat.isPlanar(decoder.getSampleFormat());
+			this.uncompressed = decoder.getCodecID().name().startsWith("CODEC_ID_PCM_");
+			this.channelCount = decoder.getChannels();
+		}
 		
-		final MediaAudioConverter converter = MediaAudioConverterFactory
-				.createConverter(MediaAudioConverterFactory.DEFAULT_JAVA_AUDIO, samples);
+		/**
+		 * Decodes all frames contained in the given packet.
+		 * @param packet - Packet belonging to the stream of this decoder.
+		 * @throws InterruptedException
+		 */
+		void decode(MediaPacket packet) throws InterruptedException {
+			/*
+			 * Uncompressed packets can contain more samples than the frame size
+			 * reported by the decoder.
+			 */
+			int packetSamples = packet.getSize() / (encoding.getBytesPerSample() * channelCount);
+			if(packetSamples > samples.getMaxNumSamples()) {
+				//The previous frame stays in use if the new one cannot be created
+				MediaAudio previous = samples;
+				samples = createFrame(packetSamples);
+				previous.delete();
+			}
+			int offset = 0;
+			do {
+				int bytesRead = decoder.decode(samples, packet, offset);
+				if (bytesRead < 0) {
+					return;
+				}
+				//The decoder reports a full frame for the shorter last packet of an uncompressed stream
+				publish(uncompressed ? bytesRead / (encoding.getBytesPerSample() * channelCount) : Integer.MAX_VALUE);
+				offset += bytesRead;
+			} while (offset < packet.getSize());
+		}
 		
-		ByteBuffer rawAudio = null;
-
-		final MediaPacket packet = MediaPacket.make();
-
-		// Read the packets
-		while (demuxer.read(packet) >= 0) {
-			//Check if the packet is part of the current stream
-			if (packet.getStreamIndex() == channel.getIndex()) {
-				int offset = 0;
-				int bytesRead = 0;
-				do {
-					if(interrupted) {
-						return;
+		/**
+		 * Drains the frames which are still cached by the decoder.
+		 * @throws InterruptedException
+		 */
+		void flush() throws InterruptedException {
+			do {
+				decoder.decode(samples, null, 0);
+				publish(Integer.MAX_VALUE);
+			} while (samples.isComplete());
+		}
+		
+		/**
+		 * Writes the samples of the decoded frame.
+		 * @param maxFrames - Maximum number of samples per channel contained in the frame.
+		 * @throws InterruptedException
+		 */
+		private void publish(int maxFrames) throws InterruptedException {
+			if (samples.isComplete()) {
+				int frames = Math.min(samples.getNumSamples(), maxFrames);
+				if(convertedAudio.length < frames) {
+					convertedAudio = new short[frames];
+				}
+				long timeStamp = samples.getTimeStamp();
+				if(timeStamp != Global.NO_PTS) {
+					position = toSamples(timeStamp, samples.getTimeBase(), sampleRate) - firstSample;
+				}
+				SampleBuffer interleaved = planar ? null : readPlane(0, frames * channelCount, frames);
+				for (int channel = 0; channel < Math.min(channelCount, writers.length); channel++) {
+					if(writers[channel] == null) {
+						continue;
 					}
-					bytesRead += audioDecoder.decode(samples, packet, offset);
-					if (samples.isComplete()) {
-						//Send the packet data to listeners					
-						rawAudio = converter.toJavaAudio(rawAudio, samples);
-						channel.addRawData(rawAudio);						
+					if(planar) {
+						readPlane(channel, frames, frames).read(0, 0, convertedAudio, 0, frames);
+					} else {
+						interleaved.read(0, channel, convertedAudio, 0, frames);
 					}
-					offset += bytesRead;
-				} while (offset < packet.getSize());
+					writers[channel].write(convertedAudio, frames, position);
+				}
+				position += frames;
+			}
+		}
+		
+		/**
+		 * Releases the native memory of the decoded frame.
+		 */
+		void close() {
+			samples.delete();
+		}
+		
+		/**
+		 * @return Position of the sample following the last decoded frame.
+		 */
+		long getPosition() {
+			return position;
+		}
+		
+		/**
+		 * @param position - Position of the next decoded frame if it does not have a time stamp.
+		 */
+		void setPosition(long position) {
+			this.position = position;
+		}
+		
+		int getSampleRate() {
+			return sampleRate;
+		}
+		
+		/**
+		 * Creates a frame which can hold the given number of samples per channel.
+		 * @param sampleCount - Number of samples per channel.
+		 * @return Frame for the decoded samples.
+		 */
+		private MediaAudio createFrame(int sampleCount) {
+			io.humble.video.AudioChannel.Layout layout = decoder.getChannelLayout();
+			if(layout == io.humble.video.AudioChannel.Layout.CH_LAYOUT_UNKNOWN) {
+				layout = io.humble.video.AudioChannel.getDefaultLayout(decoder.getChannels());
+			}
+			return MediaAudio.make(
+					Math.max(sampleCount, MIN_FRAME_SIZE),
+					decoder.getSampleRate(),
+					decoder.getChannels(),
+					layout,
+					decoder.getSampleFormat());
+		}
+		
+		/**
+		 * Copies a data plane of the decoded frame into the raw audio buffer.
+		 * @param plane - Index of the plane.
+		 * @param sampleCount - Number of samples in the plane.
+		 * @param frames - Number of frames in the plane.
+		 * @return View on the copied samples.
+		 */
+		private SampleBuffer readPlane(int plane, int sampleCount, int frames) {
+			int size = sampleCount * encoding.getBytesPerSample();
+			if(rawAudio.length < size) {
+				rawAudio = new byte[size];
+				rawSamples = null;
 			}
+			if(rawSamples == null) {
+				rawSamples = new SampleBuffer(ByteBuffer.wrap(rawAudio), encoding, planar ? 1 : channelCount);
+			}
+			Buffer data = samples.getData(plane);
+			data.get(0, rawAudio, 0, size);
+			data.delete();
+			rawSamples.setFrameCount(frames);
+			return rawSamples;
+		}
+	}
+	
+	/**
+	 * Returns the sample encoding for a decoder sample format.
+	 * @param format - Sample format of the decoder.
+	 * @return Matching encoding.
+	 */
+	private static SampleBuffer.Encoding getEncoding(AudioFormat.Type format) {
+		switch (AudioFormat.getPackedSampleFormat(format)) {
+		case SAMPLE_FMT_U8:
+			return SampleBuffer.Encoding.PCM_UNSIGNED_8;
+		case SAMPLE_FMT_S16:
+			return SampleBuffer.Encoding.PCM_SIGNED_16;
+		case SAMPLE_FMT_S32:
+			return SampleBuffer.Encoding.PCM_SIGNED_32;
+		case SAMPLE_FMT_FLT:
+			return SampleBuffer.Encoding.FLOAT_32;
+		case SAMPLE_FMT_DBL:
+			return SampleBuffer.Encoding.FLOAT_64;
+		default:
+			throw new IllegalArgumentException("Unsupported sample format " + format);
 		}
 	}
 }
@@ -0,0 +1,79 @@
+package lanr.logic;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Iterative radix-2 fast fourier transform of a fixed size. The
+ *         twiddle factors and the bit reversed indices are calculated once,
+ *         so transforming a frame does not allocate any memory.
+ *
+ */
+public class FourierTransform {
+
+	private final int size;
+	private final double[] cosine;
+	private final double[] sine;
+	private final int[] reversed;
+
+	/**
+	 * @param size - Number of samples per transform, has to be a power of two.
+	 */
+	public FourierTransform(int size) {
+		if(size < 2 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("Size of the transform has to be a power of two: " + size);
+		}
+		this.size = size;
+		this.cosine = new double[size / 2];
+		this.sine = new double[size / 2];
+		for (int i = 0; i < size / 2; i++) {
+			cosine[i] = Math.cos(2 * Math.PI * i / size);
+			sine[i] = -Math.sin(2 * Math.PI * i / size);
+		}
+		this.reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; i++) {
+			reversed[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+	}
+
+	/**
+	 * Transforms the complex values in place.
+	 * @param real - Real parts with the length of the transform.
+	 * @param imaginary - Imaginary parts with the length of the transform.
+	 */
+	public void transform(double[] real, double[] imaginary) {
+		for (int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if(j > i) {
+				double t = real[i];
+				real[i] = real[j];
+				real[j] = t;
+				t = imaginary[i];
+				imaginary[i] = imaginary[j];
+				imaginary[j] = t;
+			}
+		}
+		for (int length = 2; length <= size; length <<= 1) {
+			int half = length / 2;
+			int step = size / length;
+			for (int start = 0; start < size; start += length) {
+				for (int k = 0; k < half; k++) {
+					double wr = cosine[k * step];
+					double wi = sine[k * step];
+					int even = start + k;
+					int odd = even + half;
+					double tr = real[odd] * wr - imaginary[odd] * wi;
+					double ti = real[odd] * wi + imaginary[odd] * wr;
+					real[odd] = real[even] - tr;
+					imaginary[odd] = imaginary[even] - ti;
+					real[even] += tr;
+					imaginary[even] += ti;
+				}
+			}
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+}
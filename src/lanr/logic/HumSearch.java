@@ -1,14 +1,344 @@
 package lanr.logic;
 
-import lanr.logic.model.AudioData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import lanr.logic.model.AudioChannel;
 import lanr.logic.model.Noise;
+import lanr.logic.model.NoiseType;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Searches for mains hum. Instead of a complete spectrum only the
+ *         energy at the mains frequencies and their first harmonics is
+ *         calculated with a bank of Goertzel filters, which costs a few
+ *         operations per sample and filter.<br>
+ *         The channel is split into windows. A window contains hum if the
+ *         energy of the harmonics of one mains frequency makes up a large part
+ *         of the energy of the whole window. Consecutive windows with hum are
+ *         merged into one noise, its severity is the average ratio of the
+ *         tonal to the complete energy.<br>
+ *         Candidates are found by the same filters on the decimated samples of
+ *         a {@link CoarseChannel}, with a lower threshold, since averaging
+ *         slightly damps the higher harmonics.
+ *
+ */
+public class HumSearch implements NoiseSearch, CandidateFilter {
+
+	/**
+	 * Mains frequencies in Hz.
+	 */
+	public static final double[] DEFAULT_FUNDAMENTALS = { 50, 60 };
+	/**
+	 * Number of harmonics including the fundamental frequency.
+	 */
+	public static final int DEFAULT_HARMONICS = 5;
+	/**
+	 * Length of a window in seconds. Results in a resolution of 5 Hz,
+	 * which separates the harmonics of 50 Hz and 60 Hz.
+	 */
+	public static final double DEFAULT_WINDOW_LENGTH = 0.2;
+	/**
+	 * Minimum ratio of the tonal to the complete energy of a window with hum.
+	 */
+	public static final double DEFAULT_THRESHOLD = 0.3;
+	/**
+	 * Minimum length in seconds of a hum noise.
+	 */
+	public static final double DEFAULT_MIN_LENGTH = 2;
+	/**
+	 * Windows with a lower level in dBFS are not searched, since hum is
+	 * inaudible there and rounding errors would dominate the ratio.
+	 */
+	private static final double MIN_LEVEL = -80;
+	/**
+	 * Factor applied to the threshold when searching for candidates.
+	 */
+	private static final double CANDIDATE_MARGIN = 0.5;
+	private static final double FULL_SCALE = 32768;
+
+	private final double[] fundamentals;
+	private final int harmonics;
+	private final double windowLength;
+	private final double threshold;
+	private final double minLength;
+
+	/*
+	 * State of the channel which is currently searched
+	 */
+	/**
+	 * Receives every noise as soon as it ends.
+	 */
+	private Consumer<Noise> sink;
+	private int channelIndex;
+	private FilterBank filters;
+	private double[] tonalEnergy;
+	private int windowSize;
+	private int windowFill;
+	private long windowEnergy;
+	private double minEnergy;
+	private long minSamples;
+	/**
+	 * Position of the first sample of the current window.
+	 */
+	private long windowStart;
+	private long humStart = -1;
+	private double ratioSum;
+	private int humWindows;
+	/**
+	 * Number of samples which are skipped before the first window.
+	 */
+	private int skip;
+
+	public HumSearch() {
+		this(DEFAULT_FUNDAMENTALS, DEFAULT_HARMONICS, DEFAULT_WINDOW_LENGTH, DEFAULT_THRESHOLD, DEFAULT_MIN_LENGTH);
+	}
+
+	/**
+	 * @param fundamentals - Mains frequencies in Hz.
+	 * @param harmonics - Number of harmonics including the fundamental frequency.
+	 * @param windowLength - Length of a window in seconds.
+	 * @param threshold - Minimum ratio of the tonal to the complete energy.
+	 * @param minLength - Minimum length in seconds of a hum noise.
+	 */
+	public HumSearch(double[] fundamentals, int harmonics, double windowLength, double threshold, double minLength) {
+		if(fundamentals.length == 0 || harmonics <= 0 || windowLength <= 0) {
+			throw new IllegalArgumentException("At least one frequency, harmonic and a positive window length are required");
+		}
+		this.fundamentals = fundamentals.clone();
+		this.harmonics = harmonics;
+		this.windowLength = windowLength;
+		this.threshold = threshold;
+		this.minLength = minLength;
+	}
+
+	/**
+	 * Creates the filters for the sample rate of a new channel.
+	 */
+	@Override
+	public void start(AudioChannel channel, long position, Consumer<Noise> sink) {
+		this.sink = sink;
+		channelIndex = channel.getIndex();
+		int sampleRate = channel.getSampleRate();
+		filters = new FilterBank(sampleRate);
+		tonalEnergy = new double[fundamentals.length];
+		windowSize = Math.max(1, (int) (windowLength * sampleRate));
+		windowFill = 0;
+		windowEnergy = 0;
+		minEnergy = getMinEnergy(windowSize);
+		minSamples = (long) (minLength * sampleRate);
+		//The windows always start at multiples of the window size, no matter where the search starts
+		int offset = (int) (position % windowSize);
+		skip = offset == 0 ? 0 : windowSize - offset;
+		windowStart = position + skip;
+		humStart = -1;
+	}
+
+	@Override
+	public void onBlock(short[] samples, int length) {
+		int offset = Math.min(skip, length);
+		skip -= offset;
+		while (offset < length) {
+			int end = offset + Math.min(length - offset, windowSize - windowFill);
+			filters.process(samples, offset, end);
+			long energy = 0;
+			for (int i = offset; i < end; i++) {
+				energy += samples[i] * samples[i];
+			}
+			windowEnergy += energy;
+			windowFill += end - offset;
+			offset = end;
+			if(windowFill == windowSize) {
+				endWindow();
+			}
+		}
+	}
+
+	@Override
+	public BitSet getCandidates(CoarseChannel coarse) {
+		BitSet candidates = new BitSet(coarse.getBlockCount());
+		FilterBank coarseFilters = new FilterBank(coarse.getDecimatedRate());
+		//Harmonics above the nyquist frequency of the decimated samples can't be checked
+		if(coarseFilters.size() < new FilterBank(coarse.getChannel().getSampleRate()).size()) {
+			candidates.set(0, coarse.getBlockCount());
+			return candidates;
+		}
+		short[] samples = coarse.getDecimatedSamples();
+		int size = Math.max(1, (int) (windowLength * coarse.getDecimatedRate()));
+		double limit = getMinEnergy(size);
+		double[] tonal = new double[fundamentals.length];
+		long decimation = coarse.getDecimation();
+		for (int start = 0; start + size <= samples.length; start += size) {
+			coarseFilters.process(samples, start, start + size);
+			long energy = 0;
+			for (int i = start; i < start + size; i++) {
+				energy += samples[i] * samples[i];
+			}
+			Arrays.fill(tonal, 0);
+			coarseFilters.addEnergies(tonal, size);
+			for(double energyOfHarmonics : tonal) {
+				if(energyOfHarmonics >= CANDIDATE_MARGIN * threshold * Math.max(energy, limit)) {
+					int from = (int) (start * decimation / coarse.getBlockSize());
+					int to = (int) (((start + size) * decimation - 1) / coarse.getBlockSize()) + 1;
+					candidates.set(from, Math.min(to, coarse.getBlockCount()));
+					break;
+				}
+			}
+		}
+		return candidates;
+	}
 
-public class HumSearch implements NoiseSearch {
+	@Override
+	public boolean isIdle() {
+		return humStart < 0;
+	}
 
+	/**
+	 * Ends the search of the current channel. An incomplete last window is ignored.
+	 */
 	@Override
-	public Noise search(AudioData data) {
-		// TODO Auto-generated method stub
-		return null;
+	public void finish() {
+		if(humStart >= 0) {
+			endHum();
+		}
+	}
+
+	/**
+	 * Compares the tonal energy of the window with its complete energy
+	 * and resets the filters for the next window.
+	 */
+	private void endWindow() {
+		Arrays.fill(tonalEnergy, 0);
+		filters.addEnergies(tonalEnergy, windowSize);
+		double ratio = 0;
+		if(windowEnergy > minEnergy) {
+			for(double energy : tonalEnergy) {
+				ratio = Math.max(ratio, Math.min(1, energy / windowEnergy));
+			}
+		}
+		if(ratio >= threshold) {
+			if(humStart < 0) {
+				humStart = windowStart;
+				ratioSum = 0;
+				humWindows = 0;
+			}
+			ratioSum += ratio;
+			humWindows++;
+		} else if(humStart >= 0) {
+			endHum();
+		}
+		windowStart += windowSize;
+		windowFill = 0;
+		windowEnergy = 0;
+	}
+
+	/**
+	 * Reports a noise for the current hum if it is long enough.
+	 */
+	private void endHum() {
+		long length = (long) humWindows * windowSize;
+		if(length >= minSamples) {
+			Noise noise = new Noise(NoiseType.Hum, humStart, length, ratioSum / humWindows);
+			noise.setChannel(channelIndex);
+			sink.accept(noise);
+		}
+		humStart = -1;
 	}
 
+	/**
+	 * Converts the minimum level into the energy of a window.
+	 */
+	private static double getMinEnergy(int windowSize) {
+		double minAmplitude = FULL_SCALE * Math.pow(10, MIN_LEVEL / 20);
+		return minAmplitude * minAmplitude * windowSize;
+	}
+
+	/**
+	 * Goertzel filters for the harmonics of all fundamental frequencies
+	 * below the nyquist frequency of a sample rate.
+	 */
+	private class FilterBank {
+
+		/**
+		 * Goertzel coefficient 2cos(2 pi f / fs) of each filter.
+		 */
+		private final double[] coefficients;
+		/**
+		 * Index of the fundamental frequency of each filter.
+		 */
+		private final int[] filterFundamentals;
+		private final double[] state1;
+		private final double[] state2;
+
+		FilterBank(double sampleRate) {
+			List<Double> frequencies = new ArrayList<Double>();
+			List<Integer> owners = new ArrayList<Integer>();
+			for (int f = 0; f < fundamentals.length; f++) {
+				for (int h = 1; h <= harmonics; h++) {
+					double frequency = fundamentals[f] * h;
+					//Frequencies above the nyquist frequency can't be contained in the channel
+					if(frequency < sampleRate / 2.0) {
+						frequencies.add(frequency);
+						owners.add(f);
+					}
+				}
+			}
+			coefficients = new double[frequencies.size()];
+			filterFundamentals = new int[frequencies.size()];
+			for (int i = 0; i < coefficients.length; i++) {
+				coefficients[i] = 2 * Math.cos(2 * Math.PI * frequencies.get(i) / sampleRate);
+				filterFundamentals[i] = owners.get(i);
+			}
+			state1 = new double[coefficients.length];
+			state2 = new double[coefficients.length];
+		}
+
+		int size() {
+			return coefficients.length;
+		}
+
+		/**
+		 * Passes samples through all filters.
+		 * @param samples - Array containing the samples.
+		 * @param from - Index of the first sample.
+		 * @param to - Index after the last sample.
+		 */
+		void process(short[] samples, int from, int to) {
+			//One filter at a time keeps its state in registers for the whole block
+			for (int f = 0; f < coefficients.length; f++) {
+				double coefficient = coefficients[f];
+				double s1 = state1[f];
+				double s2 = state2[f];
+				for (int i = from; i < to; i++) {
+					double s = samples[i] + coefficient * s1 - s2;
+					s2 = s1;
+					s1 = s;
+				}
+				state1[f] = s1;
+				state2[f] = s2;
+			}
+		}
+
+		/**
+		 * Adds the energy found by every filter to its fundamental frequency
+		 * and resets the filters for the next window.
+		 * @param tonalEnergy - Energy of each fundamental frequency.
+		 * @param windowSize - Number of samples passed since the last reset.
+		 */
+		void addEnergies(double[] tonalEnergy, int windowSize) {
+			for (int f = 0; f < coefficients.length; f++) {
+				double s1 = state1[f];
+				double s2 = state2[f];
+				double power = s1 * s1 + s2 * s2 - coefficients[f] * s1 * s2;
+				//A sinusoid with the energy E results in a power of E * N / 2
+				tonalEnergy[filterFundamentals[f]] += 2 * power / windowSize;
+				state1[f] = 0;
+				state2[f] = 0;
+			}
+		}
+	}
 }
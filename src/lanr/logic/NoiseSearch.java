@@ -1,9 +1,60 @@
 package lanr.logic;
 
-import lanr.logic.model.AudioData;
+import java.util.function.Consumer;
+
+import lanr.logic.model.AudioChannel;
 import lanr.logic.model.Noise;
 
+/**
+ * @author Nicolas Bruch
+ * 
+ *         Searches a single channel for a type of noise while its samples
+ *         are streamed through it block by block. A search keeps its state
+ *         across blocks, so it only sees every sample once. Searches
+ *         implementing {@link SpectrumConsumer} additionally receive the
+ *         spectra of the channel.<br>
+ *         Every noise is reported to the sink of the search as soon as it
+ *         ends, so it can be shown while the rest of the channel is still
+ *         searched.<br>
+ *         The {@link DetectorRunner} passes every block to all searches of
+ *         a channel, a search is used for a single channel at a time.
+ *
+ */
 public interface NoiseSearch {
 
-	Noise search(AudioData data);
+	/**
+	 * Resets the state of the search for a new channel.
+	 * @param channel - Channel to be searched.
+	 * @param sink - Receives the found noises, the channel of each noise is set.
+	 */
+	default void start(AudioChannel channel, Consumer<Noise> sink) {
+		start(channel, 0, sink);
+	}
+
+	/**
+	 * Resets the state of the search for a part of a channel.
+	 * @param channel - Channel to be searched.
+	 * @param position - Index of the first sample passed to the search.
+	 * @param sink - Receives the found noises, the channel of each noise is set.
+	 */
+	void start(AudioChannel channel, long position, Consumer<Noise> sink);
+
+	/**
+	 * Searches the next block of samples of the channel.
+	 * @param samples - Samples following the previous block.
+	 * @param length - Number of valid samples.
+	 */
+	void onBlock(short[] samples, int length);
+
+	/**
+	 * @return True if no noise is in progress, so finishing the search
+	 *         now would not cut off a noise.
+	 */
+	boolean isIdle();
+
+	/**
+	 * Ends the search of the current channel. A noise which is still in
+	 * progress is reported to the sink.
+	 */
+	void finish();
 }
@@ -0,0 +1,277 @@
+package lanr.logic;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.AudioData;
+import lanr.logic.model.Noise;
+import lanr.logic.model.SampleStore;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Searches the stored samples of all channels in parallel. Every
+ *         channel is split into time segments, which are searched by their
+ *         own {@link NoiseSearch}es on a {@link ForkJoinPool}.<br>
+ *         A segment starts its searches a bit earlier, so their state is the
+ *         same as in a sequential search when the segment begins, and keeps
+ *         searching after its end until no noise is in progress. It only
+ *         reports the noises which start inside of the segment. When two
+ *         segments are joined, noises of the right segment which overlap a
+ *         noise of the left segment are merged into it, so the result is the
+ *         same as searching the whole channel at once.
+ *
+ */
+public class ParallelSearch {
+
+	/**
+	 * Length of the segments in seconds.
+	 */
+	public static final double DEFAULT_SEGMENT_LENGTH = 60;
+	/**
+	 * Time in seconds which is searched in front of and after a segment.
+	 * Has to be longer than the history any search depends on.
+	 */
+	public static final double DEFAULT_OVERLAP = 1;
+
+	private static final int BLOCK_SIZE = AnalysisPipeline.DEFAULT_BLOCK_SIZE;
+	/**
+	 * Order of the found noises.
+	 */
+	static final Comparator<Noise> NOISE_ORDER =
+			Comparator.comparingLong(Noise::getLocation).thenComparing(Noise::getType);
+
+	private final ForkJoinPool pool;
+	private final Supplier<List<NoiseSearch>> searches;
+	private final double segmentLength;
+	private final double overlap;
+
+	/**
+	 * Creates a search with all available searches on the common pool.
+	 */
+	public ParallelSearch() {
+		this(ForkJoinPool.commonPool(), DetectorRunner::createSearches, DEFAULT_SEGMENT_LENGTH, DEFAULT_OVERLAP);
+	}
+
+	/**
+	 * @param pool - Pool running the segments.
+	 * @param searches - Creates new instances of the searches for every segment.
+	 * @param segmentLength - Length of the segments in seconds.
+	 * @param overlap - Time in seconds which is searched in front of and after a segment.
+	 */
+	public ParallelSearch(ForkJoinPool pool, Supplier<List<NoiseSearch>> searches,
+			double segmentLength, double overlap) {
+		if(segmentLength <= 0 || overlap < 0) {
+			throw new IllegalArgumentException("Segment length has to be positive and the overlap musn't be negative");
+		}
+		this.pool = pool;
+		this.searches = searches;
+		this.segmentLength = segmentLength;
+		this.overlap = overlap;
+	}
+
+	/**
+	 * Searches all channels and stores the found noises in them.
+	 * @param data - Audio data with stored samples.
+	 */
+	public void search(AudioData data) {
+		List<SegmentTask> tasks = new ArrayList<SegmentTask>();
+		for(AudioChannel channel : data.getAllChannel()) {
+			tasks.add(createTask(channel));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		for (int i = 0; i < tasks.size(); i++) {
+			data.getAllChannel().get(i).setFoundNoise(tasks.get(i).join());
+		}
+	}
+
+	/**
+	 * Searches a single channel.
+	 * @param channel - Channel with stored samples.
+	 * @return Found noises ordered by their location.
+	 */
+	public List<Noise> search(AudioChannel channel) {
+		return pool.invoke(createTask(channel));
+	}
+
+	/**
+	 * Searches only the given ranges of a channel. Noises which begin in a
+	 * range are searched until their end, even if it is outside of the range.
+	 * @param channel - Channel with stored samples.
+	 * @param ranges - Ordered ranges which do not overlap, as pairs of the
+	 *            first sample and the first sample after the range.
+	 * @return Found noises ordered by their location.
+	 */
+	public List<Noise> search(AudioChannel channel, List<long[]> ranges) {
+		return pool.invoke(createTask(channel, ranges));
+	}
+
+	private SegmentTask createTask(AudioChannel channel) {
+		return createTask(channel, 0, channel.getSampleCount());
+	}
+
+	private SegmentTask createTask(AudioChannel channel, long from, long to) {
+		long segmentSamples = Math.max(BLOCK_SIZE, (long) (segmentLength * channel.getSampleRate()));
+		long overlapSamples = (long) (overlap * channel.getSampleRate());
+		return new SegmentTask(channel, channel.getSampleStore(), from, to, segmentSamples, overlapSamples);
+	}
+
+	/**
+	 * Creates a task searching the given ranges of a channel, which can be
+	 * forked by the caller.
+	 * @param channel - Channel with stored samples.
+	 * @param ranges - Ordered ranges which do not overlap.
+	 * @return Task returning the found noises ordered by their location.
+	 */
+	RecursiveTask<List<Noise>> createTask(AudioChannel channel, List<long[]> ranges) {
+		return new RangeTask(channel, ranges);
+	}
+
+	/**
+	 * Searches a list of ranges of a channel, lists with more than one range are split in half.
+	 */
+	private class RangeTask extends RecursiveTask<List<Noise>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final AudioChannel channel;
+		private final List<long[]> ranges;
+
+		RangeTask(AudioChannel channel, List<long[]> ranges) {
+			this.channel = channel;
+			this.ranges = ranges;
+		}
+
+		@Override
+		protected List<Noise> compute() {
+			if(ranges.isEmpty()) {
+				return new ArrayList<Noise>();
+			}
+			if(ranges.size() == 1) {
+				return createTask(channel, ranges.get(0)[0], ranges.get(0)[1]).compute();
+			}
+			int middle = ranges.size() / 2;
+			RangeTask left = new RangeTask(channel, ranges.subList(0, middle));
+			RangeTask right = new RangeTask(channel, ranges.subList(middle, ranges.size()));
+			right.fork();
+			List<Noise> leftNoises = left.compute();
+			return merge(leftNoises, right.join(), ranges.get(middle)[0]);
+		}
+	}
+
+	/**
+	 * Searches a range of a channel. Ranges longer than a segment are split in half.
+	 */
+	private class SegmentTask extends RecursiveTask<List<Noise>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final AudioChannel channel;
+		private final SampleStore store;
+		private final long from;
+		private final long to;
+		private final long segmentSamples;
+		private final long overlapSamples;
+
+		SegmentTask(AudioChannel channel, SampleStore store, long from, long to,
+				long segmentSamples, long overlapSamples) {
+			this.channel = channel;
+			this.store = store;
+			this.from = from;
+			this.to = to;
+			this.segmentSamples = segmentSamples;
+			this.overlapSamples = overlapSamples;
+		}
+
+		@Override
+		protected List<Noise> compute() {
+			if(to - from <= segmentSamples) {
+				return searchSegment();
+			}
+			long middle = from + (to - from) / 2;
+			SegmentTask left = new SegmentTask(channel, store, from, middle, segmentSamples, overlapSamples);
+			SegmentTask right = new SegmentTask(channel, store, middle, to, segmentSamples, overlapSamples);
+			right.fork();
+			List<Noise> leftNoises = left.compute();
+			return merge(leftNoises, right.join(), middle);
+		}
+
+		/**
+		 * Searches the segment including the overlapping parts.
+		 * @return Noises starting inside of the segment.
+		 */
+		private List<Noise> searchSegment() {
+			long size = store.size();
+			long position = Math.max(0, from - overlapSamples);
+			DetectorRunner runner = new DetectorRunner(channel, searches.get(), position);
+			short[] block = new short[BLOCK_SIZE];
+			while (position < size) {
+				int read = store.read(position, block, 0, block.length);
+				if(read <= 0) {
+					break;
+				}
+				runner.process(block, read);
+				position += read;
+				//Noises which started in the segment have to be completed
+				if(position >= to + overlapSamples && runner.isIdle()) {
+					break;
+				}
+			}
+			List<Noise> found = new ArrayList<Noise>();
+			for(Noise noise : runner.collect()) {
+				if(noise.getLocation() >= from && noise.getLocation() < to) {
+					found.add(noise);
+				}
+			}
+			found.sort(NOISE_ORDER);
+			return found;
+		}
+	}
+
+	/**
+	 * Joins the noises of two neighbouring segments. A noise of the right
+	 * segment which overlaps a noise of the same type of the left segment
+	 * belongs to the same noise, which has already been found completely
+	 * by the left segment.
+	 * @param left - Noises of the left segment.
+	 * @param right - Noises of the right segment.
+	 * @param boundary - First sample of the right segment.
+	 * @return Noises of both segments ordered by their location.
+	 */
+	private static List<Noise> merge(List<Noise> left, List<Noise> right, long boundary) {
+		List<Noise> crossing = new ArrayList<Noise>();
+		for(Noise noise : left) {
+			if(getEnd(noise) > boundary) {
+				crossing.add(noise);
+			}
+		}
+		List<Noise> merged = new ArrayList<Noise>(left.size() + right.size());
+		merged.addAll(left);
+		for(Noise noise : right) {
+			Noise overlapped = null;
+			for(Noise candidate : crossing) {
+				if(candidate.getType() == noise.getType() && getEnd(candidate) > noise.getLocation()) {
+					overlapped = candidate;
+					break;
+				}
+			}
+			if(overlapped == null) {
+				merged.add(noise);
+			} else if(getEnd(noise) > getEnd(overlapped)) {
+				overlapped.setLength(getEnd(noise) - overlapped.getLocation());
+			}
+		}
+		merged.sort(NOISE_ORDER);
+		return merged;
+	}
+
+	private static long getEnd(Noise noise) {
+		return noise.getLocation() + noise.getLength();
+	}
+}
@@ -0,0 +1,594 @@
+package lanr.logic;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.AudioData;
+import lanr.logic.model.MappedSampleStore;
+import lanr.logic.model.PeakPyramid;
+import lanr.logic.model.SampleStore;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Keeps the decoded samples of analyzed files on the disk, so a
+ *         file does not have to be decoded again when it is analyzed another
+ *         time. Entries are identified by the path, size and modification time
+ *         of the audio file. The least recently used entries are removed when
+ *         the cache exceeds its size, the samples of an entry together with
+ *         its peaks. Entries whose samples or peaks are still mapped by an
+ *         open file are kept, and temporary files left behind by a crashed
+ *         write are removed.<br>
+ *         The {@link PeakPyramid}s of the channels are stored in a separate
+ *         small file, which is mapped when the file is opened again. The
+ *         waveform can therefore be drawn before anything is decoded.<br>
+ *         New entries are written into temporary files without holding the
+ *         lock of the cache, which only guards moving them into place,
+ *         evicting and opening entries. Loading the peaks of a file therefore
+ *         never waits until the samples of a large file have been written.
+ *
+ */
+public class PcmCache {
+
+	/**
+	 * Directory of the cache, can be set with the system property <i>lanr.cacheDirectory</i>.
+	 */
+	public static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("lanr.cacheDirectory",
+			Paths.get(System.getProperty("user.home"), ".lanr", "cache").toString()));
+	/**
+	 * Size of the cache in bytes, can be set with the system property <i>lanr.cacheSize</i>.
+	 */
+	public static final long DEFAULT_SIZE = Long.getLong("lanr.cacheSize", 4L << 30);
+
+	private static final String FILE_EXTENSION = ".pcm";
+	private static final String PEAK_FILE_EXTENSION = ".peaks";
+	private static final String TEMPORARY_PREFIX = "lanr-";
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+	/**
+	 * Age in milliseconds after which a temporary file belongs to a crashed
+	 * write, since a file which is being written is modified continuously.
+	 */
+	private static final long STALE_TEMPORARY_AGE = TimeUnit.HOURS.toMillis(1);
+	/**
+	 * Version 1 contained a mix of all channels of a stream instead of a single channel.
+	 */
+	private static final byte[] MAGIC = "LANRPCM2".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] PEAK_MAGIC = "LANRPKS2".getBytes(StandardCharsets.US_ASCII);
+	/**
+	 * Magic, sample rate and sample count.
+	 */
+	private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES + Long.BYTES;
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+	private final Path directory;
+	private final long maxSize;
+	/**
+	 * Guards the entries in the directory, but not the temporary files.
+	 */
+	private final Object lock = new Object();
+	/**
+	 * Number of open sample stores of every entry, guarded by the lock.
+	 */
+	private final Map<String, Integer> openStores = new HashMap<String, Integer>();
+	/**
+	 * Peaks mapped from every entry, which are in use until they are
+	 * collected. Guarded by the lock.
+	 */
+	private final Map<String, List<WeakReference<PeakPyramid>>> mappedPeaks =
+			new HashMap<String, List<WeakReference<PeakPyramid>>>();
+
+	public PcmCache() {
+		this(DEFAULT_DIRECTORY, DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param directory - Directory containing the cached samples.
+	 * @param maxSize - Maximum size of the cache in bytes.
+	 */
+	public PcmCache(Path directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Replaces the sample stores of all channels with the cached samples.
+	 * Nothing is changed unless all channels are cached.
+	 * @param data - Audio data to be loaded.
+	 * @return True if the samples have been loaded from the cache.
+	 */
+	public boolean load(AudioData data) {
+		Map<AudioChannel, SampleStore> stores = new HashMap<AudioChannel, SampleStore>();
+		try {
+			String key = getKey(data);
+			synchronized (lock) {
+				for(AudioChannel channel : data.getAllChannel()) {
+					Path file = getFile(key, channel);
+					SampleStore store = open(file, key, channel);
+					if(store == null) {
+						stores.values().forEach(SampleStore::close);
+						return false;
+					}
+					stores.put(channel, store);
+					//Mark the entry as recently used
+					Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+				}
+			}
+		} catch (IOException e) {
+			stores.values().forEach(SampleStore::close);
+			return false;
+		}
+		stores.forEach(AudioChannel::setSampleStore);
+		return true;
+	}
+
+	/**
+	 * Writes the samples of all channels into the cache and removes the
+	 * least recently used entries if the cache got too large.
+	 * @param data - Decoded audio data.
+	 * @throws IOException
+	 */
+	public void save(AudioData data) throws IOException {
+		Files.createDirectories(directory);
+		String key = getKey(data);
+		Map<Path, Path> temporaries = new LinkedHashMap<Path, Path>();
+		try {
+			for(AudioChannel channel : data.getAllChannel()) {
+				temporaries.put(getFile(key, channel), write(channel));
+			}
+			synchronized (lock) {
+				for(Map.Entry<Path, Path> entry : temporaries.entrySet()) {
+					install(entry.getValue(), entry.getKey());
+				}
+				evict();
+			}
+		} finally {
+			//Only the files of a failed save are left
+			for(Path temporary : temporaries.values()) {
+				Files.deleteIfExists(temporary);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the peaks of all channels with the stored peaks and sets the
+	 * exact number of samples of the channels. Nothing is changed unless the
+	 * peaks of all channels are stored.
+	 * @param data - Audio data whose waveform should be drawn.
+	 * @return True if the peaks have been loaded from the cache.
+	 */
+	public boolean loadPeaks(AudioData data) {
+		try {
+			Path file = getPeakFile(getKey(data));
+			PeakPyramid[] peaks;
+			synchronized (lock) {
+				peaks = mapPeaks(file, data);
+				if(peaks == null) {
+					return false;
+				}
+				List<WeakReference<PeakPyramid>> mapped = mappedPeaks.computeIfAbsent(getEntryKey(file),
+						k -> new ArrayList<WeakReference<PeakPyramid>>());
+				for(PeakPyramid channelPeaks : peaks) {
+					mapped.add(new WeakReference<PeakPyramid>(channelPeaks));
+				}
+			}
+			List<AudioChannel> channels = data.getAllChannel();
+			for (int i = 0; i < peaks.length; i++) {
+				channels.get(i).setPeaks(peaks[i]);
+				channels.get(i).setFrameCount(peaks[i].getSampleCount());
+			}
+			//Mark the entry as recently used
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the peaks of all channels into the cache, unless they are
+	 * incomplete or have been loaded from it.
+	 * @param data - Audio data whose samples have all been read.
+	 * @throws IOException
+	 */
+	public void savePeaks(AudioData data) throws IOException {
+		boolean stored = true;
+		for(AudioChannel channel : data.getAllChannel()) {
+			PeakPyramid peaks = channel.getPeaks();
+			if(peaks.getSampleCount() == 0 || peaks.getSampleCount() != channel.getFrameCount()) {
+				return;
+			}
+			stored &= peaks.isReadOnly();
+		}
+		if(stored) {
+			return;
+		}
+		Files.createDirectories(directory);
+		Path file = getPeakFile(getKey(data));
+		Path temporary = writePeaks(data);
+		try {
+			synchronized (lock) {
+				install(temporary, file);
+				evict();
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries which are not open until the
+	 * cache fits into its size, and deletes stale temporary files. Has to
+	 * be called while holding the lock.
+	 * @throws IOException
+	 */
+	private void evict() throws IOException {
+		long now = System.currentTimeMillis();
+		Map<String, List<Path>> entries = new HashMap<String, List<Path>>();
+		List<Path> files;
+		try (Stream<Path> list = Files.list(directory)) {
+			files = list.collect(Collectors.toList());
+		}
+		for(Path file : files) {
+			String name = file.getFileName().toString();
+			if(name.startsWith(TEMPORARY_PREFIX) && name.endsWith(TEMPORARY_EXTENSION)) {
+				if(now - getLastModifiedTime(file).toMillis() > STALE_TEMPORARY_AGE) {
+					delete(file);
+				}
+			} else if(name.endsWith(FILE_EXTENSION) || name.endsWith(PEAK_FILE_EXTENSION)) {
+				entries.computeIfAbsent(getEntryKey(file), k -> new ArrayList<Path>()).add(file);
+			}
+		}
+		Map<String, Long> entrySizes = new HashMap<String, Long>();
+		Map<String, FileTime> lastUses = new HashMap<String, FileTime>();
+		long size = 0;
+		for(Map.Entry<String, List<Path>> entry : entries.entrySet()) {
+			long entrySize = 0;
+			FileTime lastUse = FileTime.fromMillis(0);
+			for(Path file : entry.getValue()) {
+				entrySize += getSize(file);
+				FileTime modified = getLastModifiedTime(file);
+				lastUse = modified.compareTo(lastUse) > 0 ? modified : lastUse;
+			}
+			entrySizes.put(entry.getKey(), entrySize);
+			lastUses.put(entry.getKey(), lastUse);
+			size += entrySize;
+		}
+		List<String> keys = new ArrayList<String>(entries.keySet());
+		keys.sort(Comparator.comparing(lastUses::get));
+		for (int i = 0; i < keys.size() && size > maxSize; i++) {
+			String key = keys.get(i);
+			if(isOpen(key)) {
+				continue;
+			}
+			boolean deleted = true;
+			for(Path file : entries.get(key)) {
+				deleted &= delete(file);
+			}
+			if(deleted) {
+				size -= entrySizes.get(key);
+			}
+		}
+	}
+
+	/**
+	 * Has to be called while holding the lock.
+	 * @return True if samples or peaks of the entry are mapped by an open file.
+	 */
+	private boolean isOpen(String key) {
+		if(openStores.containsKey(key)) {
+			return true;
+		}
+		List<WeakReference<PeakPyramid>> mapped = mappedPeaks.get(key);
+		if(mapped != null) {
+			mapped.removeIf(reference -> reference.get() == null);
+			if(!mapped.isEmpty()) {
+				return true;
+			}
+			mappedPeaks.remove(key);
+		}
+		return false;
+	}
+
+	/**
+	 * Deletes a file of the cache. A file which can't be deleted, for
+	 * example because another process maps it, is left for a later eviction.
+	 * @return True if the file does not exist anymore.
+	 */
+	private static boolean delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Opens a cached entry if it matches the channel. The entry is open until
+	 * the store is closed. Has to be called while holding the lock.
+	 * @return Store mapping the cached samples or null if the entry is not usable.
+	 * @throws IOException
+	 */
+	private SampleStore open(Path file, String key, AudioChannel channel) throws IOException {
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (header.hasRemaining() && input.read(header) >= 0) {
+				//Read the complete header
+			}
+		}
+		header.flip();
+		if(header.remaining() < HEADER_SIZE) {
+			return null;
+		}
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		int sampleRate = header.getInt();
+		long sampleCount = header.getLong();
+		if(!MessageDigest.isEqual(magic, MAGIC) || sampleRate != channel.getSampleRate()) {
+			return null;
+		}
+		SampleStore store = new CachedSampleStore(file, sampleCount, key);
+		openStores.merge(key, 1, Integer::sum);
+		return store;
+	}
+
+	/**
+	 * Writes the samples of a channel into a temporary file, which is
+	 * installed as an entry after all samples have been written.
+	 * @return Temporary file.
+	 * @throws IOException
+	 */
+	private Path write(AudioChannel channel) throws IOException {
+		SampleStore store = channel.getSampleStore();
+		Path temporary = Files.createTempFile(directory, TEMPORARY_PREFIX, TEMPORARY_EXTENSION);
+		try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			ByteBuffer bytes = ByteBuffer.allocate(Math.max(HEADER_SIZE, COPY_BUFFER_SIZE * 2))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			bytes.put(MAGIC).putInt(channel.getSampleRate()).putLong(store.size());
+			bytes.flip();
+			writeFully(output, bytes);
+
+			short[] samples = new short[COPY_BUFFER_SIZE];
+			long position = 0;
+			int read;
+			while ((read = store.read(position, samples, 0, samples.length)) > 0) {
+				bytes.clear();
+				bytes.asShortBuffer().put(samples, 0, read);
+				bytes.limit(read * 2);
+				writeFully(output, bytes);
+				position += read;
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		return temporary;
+	}
+
+	/**
+	 * Replaces an entry with a temporary file. Has to be called while holding the lock.
+	 * @throws IOException
+	 */
+	private static void install(Path temporary, Path file) throws IOException {
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Maps a peak file and creates the peaks of every channel from it.
+	 * The file contains the number of channels, followed by the sample rate,
+	 * the sample count and the levels of each channel. A level consists of
+	 * its bin size, its bin count and the bins.
+	 * @return Peaks of the channels or null if the file is not usable.
+	 * @throws IOException
+	 */
+	private PeakPyramid[] mapPeaks(Path file, AudioData data) throws IOException {
+		if(!Files.isRegularFile(file) || Files.size(file) > Integer.MAX_VALUE) {
+			return null;
+		}
+		ByteBuffer bytes;
+		try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+			//The mapping stays valid after the file channel is closed
+			bytes = input.map(FileChannel.MapMode.READ_ONLY, 0, input.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		List<AudioChannel> channels = data.getAllChannel();
+		try {
+			byte[] magic = new byte[PEAK_MAGIC.length];
+			bytes.get(magic);
+			if(!MessageDigest.isEqual(magic, PEAK_MAGIC) || bytes.getInt() != channels.size()) {
+				return null;
+			}
+			PeakPyramid[] peaks = new PeakPyramid[channels.size()];
+			for (int i = 0; i < peaks.length; i++) {
+				int sampleRate = bytes.getInt();
+				long sampleCount = bytes.getLong();
+				int levelCount = bytes.getInt();
+				if(sampleRate != channels.get(i).getSampleRate() || levelCount <= 0) {
+					return null;
+				}
+				int[] binSizes = new int[levelCount];
+				ShortBuffer[] bins = new ShortBuffer[levelCount];
+				for (int level = 0; level < levelCount; level++) {
+					binSizes[level] = bytes.getInt();
+					int binBytes = Math.multiplyExact(bytes.getInt(), 2 * Short.BYTES);
+					if(binBytes < 0 || binBytes > bytes.remaining()) {
+						return null;
+					}
+					ByteBuffer levelBytes = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+					levelBytes.limit(binBytes);
+					bins[level] = levelBytes.asShortBuffer();
+					bytes.position(bytes.position() + binBytes);
+				}
+				peaks[i] = new PeakPyramid(binSizes, bins, sampleCount);
+			}
+			return peaks;
+		} catch (BufferUnderflowException | IllegalArgumentException | ArithmeticException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the peaks of all channels into a temporary peak file. The
+	 * incomplete bin at the end of the finest level is stored as its last bin.
+	 * @return Temporary file.
+	 * @throws IOException
+	 */
+	private Path writePeaks(AudioData data) throws IOException {
+		Path temporary = Files.createTempFile(directory, TEMPORARY_PREFIX, TEMPORARY_EXTENSION);
+		try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			ByteBuffer bytes = ByteBuffer.allocate(COPY_BUFFER_SIZE * 2).order(ByteOrder.LITTLE_ENDIAN);
+			bytes.put(PEAK_MAGIC).putInt(data.getAllChannel().size());
+			short[] remainder = new short[2];
+			for(AudioChannel channel : data.getAllChannel()) {
+				PeakPyramid peaks = channel.getPeaks();
+				reserve(output, bytes, Integer.BYTES * 2 + Long.BYTES);
+				bytes.putInt(channel.getSampleRate()).putLong(peaks.getSampleCount()).putInt(peaks.getLevelCount());
+				for (int level = 0; level < peaks.getLevelCount(); level++) {
+					boolean partial = level == 0 && peaks.getRemainder(remainder);
+					int binCount = peaks.getBinCount(level);
+					reserve(output, bytes, Integer.BYTES * 2);
+					bytes.putInt(peaks.getBinSize(level)).putInt(partial ? binCount + 1 : binCount);
+					for (int bin = 0; bin < binCount; bin++) {
+						reserve(output, bytes, Short.BYTES * 2);
+						bytes.putShort(peaks.getMin(level, bin)).putShort(peaks.getMax(level, bin));
+					}
+					if(partial) {
+						reserve(output, bytes, Short.BYTES * 2);
+						bytes.putShort(remainder[0]).putShort(remainder[1]);
+					}
+				}
+			}
+			bytes.flip();
+			writeFully(output, bytes);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		return temporary;
+	}
+
+	/**
+	 * Writes the buffered bytes if less than the given number of bytes fit into the buffer.
+	 */
+	private static void reserve(FileChannel output, ByteBuffer bytes, int size) throws IOException {
+		if(bytes.remaining() < size) {
+			bytes.flip();
+			writeFully(output, bytes);
+			bytes.clear();
+		}
+	}
+
+	private static void writeFully(FileChannel output, ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) {
+			output.write(bytes);
+		}
+	}
+
+	private Path getFile(String key, AudioChannel channel) {
+		return directory.resolve(key + "-" + channel.getIndex() + FILE_EXTENSION);
+	}
+
+	private Path getPeakFile(String key) {
+		return directory.resolve(key + PEAK_FILE_EXTENSION);
+	}
+
+	/**
+	 * @param file - Sample or peak file of an entry.
+	 * @return Key of the entry the file belongs to.
+	 */
+	private static String getEntryKey(Path file) {
+		String name = file.getFileName().toString();
+		int end = name.indexOf('-');
+		return name.substring(0, end >= 0 ? end : name.lastIndexOf('.'));
+	}
+
+	/**
+	 * Creates the key identifying the current version of an audio file.
+	 * @throws IOException
+	 */
+	private static String getKey(AudioData data) throws IOException {
+		Path path = Paths.get(data.getPath()).toAbsolutePath();
+		String identity = path + "|" + Files.size(path) + "|" + Files.getLastModifiedTime(path).toMillis();
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			StringBuilder key = new StringBuilder();
+			for(byte b : digest.digest(identity.getBytes(StandardCharsets.UTF_8))) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static FileTime getLastModifiedTime(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static long getSize(Path file) {
+		try {
+			return Files.size(file);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Store mapping the samples of an entry, which keeps the entry open
+	 * until it is closed.
+	 */
+	private class CachedSampleStore extends MappedSampleStore {
+
+		private final String key;
+		private boolean closed = false;
+
+		CachedSampleStore(Path file, long sampleCount, String key) throws IOException {
+			super(file, HEADER_SIZE, sampleCount);
+			this.key = key;
+		}
+
+		@Override
+		public void close() {
+			try {
+				super.close();
+			} finally {
+				synchronized (lock) {
+					if(!closed) {
+						closed = true;
+						openStores.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package lanr.logic;
+
+import lanr.logic.model.SampleBlock;
+
+/**
+ * @author Nicolas Bruch
+ * 
+ *         Receives the sample blocks of a single audio channel from the
+ *         {@link AnalysisPipeline}. The blocks are delivered in order on the
+ *         worker thread of the channel.
+ *
+ */
+public interface SampleBlockConsumer {
+
+	/**
+	 * Processes the next block of the channel.
+	 * @param block - Block containing the decoded samples.
+	 */
+	void consume(SampleBlock block);
+	
+	/**
+	 * Called after the last block of the channel has been consumed.
+	 */
+	default void finish() {
+	}
+}
@@ -1,14 +1,225 @@
 package lanr.logic;
 
-import lanr.logic.model.AudioData;
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+import lanr.logic.model.AudioChannel;
 import lanr.logic.model.Noise;
+import lanr.logic.model.NoiseType;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Searches for longer silent areas. The energy of a sliding window is
+ *         kept as a running sum of squares, which is updated with every new
+ *         sample instead of being calculated again for every window. The cost
+ *         per sample therefore does not depend on the length of the window.<br>
+ *         A silent area starts when the level of the window falls below the
+ *         enter threshold and ends when it rises above the higher exit
+ *         threshold, so a level close to a single threshold does not split the
+ *         area into many short ones.<br>
+ *         A window which is long enough to contain a complete block of a
+ *         {@link CoarseChannel} has at least the energy of this block, so a
+ *         silent area can only start around blocks below the enter threshold.
+ *
+ */
+public class SilenceSearch implements NoiseSearch, CandidateFilter {
+
+	/**
+	 * Length of the window in seconds.
+	 */
+	public static final double DEFAULT_WINDOW_LENGTH = 0.05;
+	/**
+	 * Level in dBFS below which a silent area starts.
+	 */
+	public static final double DEFAULT_ENTER_LEVEL = -60;
+	/**
+	 * Level in dBFS above which a silent area ends.
+	 */
+	public static final double DEFAULT_EXIT_LEVEL = -54;
+	/**
+	 * Minimum length in seconds of a silent area.
+	 */
+	public static final double DEFAULT_MIN_LENGTH = 2;
+	/**
+	 * Length in seconds from which on a silent area has the highest severity.
+	 */
+	private static final double MAX_SEVERITY_LENGTH = 30;
+	private static final double FULL_SCALE = 32768;
+
+	private final double windowLength;
+	private final double enterLevel;
+	private final double exitLevel;
+	private final double minLength;
 
-public class SilenceSearch implements NoiseSearch {
+	/*
+	 * State of the channel which is currently searched
+	 */
+	/**
+	 * Receives every noise as soon as it ends.
+	 */
+	private Consumer<Noise> sink;
+	private int channelIndex;
+	private int sampleRate;
+	/**
+	 * Last samples of the channel, used as a ring buffer.
+	 */
+	private short[] window;
+	private int windowIndex;
+	private long sumOfSquares;
+	/**
+	 * Sum of squares of the whole window below which a silent area starts.
+	 */
+	private long enterLimit;
+	/**
+	 * Sum of squares of the whole window above which a silent area ends.
+	 */
+	private long exitLimit;
+	private long minSamples;
+	/**
+	 * Position of the next sample.
+	 */
+	private long position;
+	private boolean silent;
+	private long silenceStart;
+	/**
+	 * Number of samples which still have to be added before a silent area can start.
+	 */
+	private int warmUp;
+
+	public SilenceSearch() {
+		this(DEFAULT_WINDOW_LENGTH, DEFAULT_ENTER_LEVEL, DEFAULT_EXIT_LEVEL, DEFAULT_MIN_LENGTH);
+	}
+
+	/**
+	 * @param windowLength - Length of the window in seconds.
+	 * @param enterLevel - Level in dBFS below which a silent area starts.
+	 * @param exitLevel - Level in dBFS above which a silent area ends, has to be at least the enter level.
+	 * @param minLength - Minimum length in seconds of a silent area.
+	 */
+	public SilenceSearch(double windowLength, double enterLevel, double exitLevel, double minLength) {
+		if(windowLength <= 0 || minLength < 0) {
+			throw new IllegalArgumentException("Window length has to be positive and the minimum length musn't be negative");
+		}
+		if(exitLevel < enterLevel) {
+			throw new IllegalArgumentException("The exit level musn't be lower than the enter level");
+		}
+		this.windowLength = windowLength;
+		this.enterLevel = enterLevel;
+		this.exitLevel = exitLevel;
+		this.minLength = minLength;
+	}
+
+	@Override
+	public void start(AudioChannel channel, long position, Consumer<Noise> sink) {
+		this.sink = sink;
+		channelIndex = channel.getIndex();
+		sampleRate = channel.getSampleRate();
+		window = new short[Math.max(1, (int) (windowLength * sampleRate))];
+		windowIndex = 0;
+		sumOfSquares = 0;
+		enterLimit = getLimit(enterLevel, window.length);
+		exitLimit = getLimit(exitLevel, window.length);
+		minSamples = (long) (minLength * sampleRate);
+		this.position = position;
+		silent = false;
+		/*
+		 * The beginning of the channel counts as silent. Inside of the channel
+		 * the window first has to be filled, so it does not start a silent
+		 * area, which would not be found when searching the whole channel.
+		 */
+		warmUp = position == 0 ? 0 : window.length;
+	}
 
 	@Override
-	public Noise search(AudioData data) {
-		// TODO Auto-generated method stub
-		return null;
+	public void onBlock(short[] samples, int length) {
+		int i = 0;
+		for (; i < length && warmUp > 0; i++, warmUp--) {
+			add(samples[i]);
+		}
+		for (; i < length; i++) {
+			add(samples[i]);
+			if(silent) {
+				if(sumOfSquares > exitLimit) {
+					//The area ends with the first sample loud enough to end it
+					endSilence(position + i);
+				}
+			} else if(sumOfSquares < enterLimit) {
+				//The whole window is silent, so the area started with its first sample
+				silent = true;
+				silenceStart = Math.max(0, position + i - window.length + 1);
+			}
+		}
+		position += length;
 	}
 
+	@Override
+	public BitSet getCandidates(CoarseChannel coarse) {
+		int windowSize = Math.max(1, (int) (windowLength * coarse.getChannel().getSampleRate()));
+		BitSet candidates = new BitSet(coarse.getBlockCount());
+		//A shorter window can lie between two blocks, so every block has to be searched
+		if(windowSize < 2 * coarse.getBlockSize() - 1) {
+			candidates.set(0, coarse.getBlockCount());
+			return candidates;
+		}
+		long limit = getLimit(enterLevel, windowSize);
+		for (int i = 0; i < coarse.getBlockCount(); i++) {
+			if(coarse.getEnergy(i) < limit) {
+				candidates.set(i);
+			}
+		}
+		//The beginning of the channel counts as silent before the window is filled
+		candidates.set(0);
+		return candidates;
+	}
+
+	@Override
+	public boolean isIdle() {
+		return !silent;
+	}
+
+	@Override
+	public void finish() {
+		if(silent) {
+			endSilence(position);
+		}
+		window = null;
+		sink = null;
+	}
+
+	/**
+	 * Adds a sample to the window and removes the oldest one from the sum.
+	 */
+	private void add(int sample) {
+		int removed = window[windowIndex];
+		window[windowIndex] = (short) sample;
+		windowIndex = windowIndex + 1 == window.length ? 0 : windowIndex + 1;
+		sumOfSquares += sample * sample - removed * removed;
+	}
+
+	/**
+	 * Reports a noise for the current silent area if it is long enough.
+	 * @param end - Position of the first sample after the area.
+	 */
+	private void endSilence(long end) {
+		silent = false;
+		long length = end - silenceStart;
+		if(length >= minSamples) {
+			double severity = Math.min(1, length / (MAX_SEVERITY_LENGTH * sampleRate));
+			Noise noise = new Noise(NoiseType.Silence, silenceStart, length, severity);
+			noise.setChannel(channelIndex);
+			sink.accept(noise);
+		}
+	}
+
+	/**
+	 * Converts a level into the sum of squares of a window with this level.
+	 * @param level - Level in dBFS.
+	 * @param windowSize - Number of samples in the window.
+	 * @return Sum of squares of the window.
+	 */
+	private static long getLimit(double level, int windowSize) {
+		double amplitude = FULL_SCALE * Math.pow(10, level / 20);
+		return (long) (amplitude * amplitude * windowSize);
+	}
 }
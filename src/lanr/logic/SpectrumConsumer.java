@@ -0,0 +1,26 @@
+package lanr.logic;
+
+import lanr.logic.model.Spectrum;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Receives the spectra of a single audio channel from a
+ *         {@link FeatureEngine}. The spectra are delivered in order.
+ *
+ */
+public interface SpectrumConsumer {
+
+	/**
+	 * Processes the next spectrum of the channel.
+	 * @param spectrum - Spectrum of the next frame.
+	 * @param engine - Engine providing the spectrum and the previous ones.
+	 */
+	void consume(Spectrum spectrum, FeatureEngine engine);
+
+	/**
+	 * Called after the last spectrum of the channel has been consumed.
+	 */
+	default void endOfSpectra() {
+	}
+}
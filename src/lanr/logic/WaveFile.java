@@ -0,0 +1,182 @@
+package lanr.logic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lanr.logic.model.MappedPcmSampleStore;
+import lanr.logic.model.SampleBuffer;
+import lanr.logic.model.SampleStore;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Header information of an uncompressed RIFF/WAVE file. The samples of
+ *         such a file can be mapped directly instead of decoding them.
+ *
+ */
+public class WaveFile {
+
+	private static final int FORMAT_PCM = 1;
+	private static final int FORMAT_FLOAT = 3;
+	private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+	private static final int RIFF_HEADER_SIZE = 12;
+	private static final int CHUNK_HEADER_SIZE = 8;
+
+	private final Path path;
+	private final SampleBuffer.Encoding encoding;
+	private final int channels;
+	private final int sampleRate;
+	private final long dataOffset;
+	private final long frameCount;
+
+	private WaveFile(Path path, SampleBuffer.Encoding encoding, int channels, int sampleRate,
+			long dataOffset, long frameCount) {
+		this.path = path;
+		this.encoding = encoding;
+		this.channels = channels;
+		this.sampleRate = sampleRate;
+		this.dataOffset = dataOffset;
+		this.frameCount = frameCount;
+	}
+
+	/**
+	 * Reads the header of a file.
+	 * @param path - Path to the file.
+	 * @return Header of the file or null if the file is not an uncompressed wave file.
+	 * @throws IOException
+	 */
+	public static WaveFile read(Path path) throws IOException {
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = read(file, 0, RIFF_HEADER_SIZE);
+			if(header == null || header.getInt(0) != fourCC("RIFF") || header.getInt(8) != fourCC("WAVE")) {
+				return null;
+			}
+			SampleBuffer.Encoding encoding = null;
+			int channels = 0;
+			int sampleRate = 0;
+			long position = RIFF_HEADER_SIZE;
+			ByteBuffer chunk;
+			while ((chunk = read(file, position, CHUNK_HEADER_SIZE)) != null) {
+				int id = chunk.getInt(0);
+				long size = Integer.toUnsignedLong(chunk.getInt(4));
+				long content = position + CHUNK_HEADER_SIZE;
+				if(id == fourCC("fmt ")) {
+					ByteBuffer format = read(file, content, (int) Math.min(size, 40));
+					if(format == null || format.limit() < 16) {
+						return null;
+					}
+					int formatTag = format.getShort(0) & 0xFFFF;
+					channels = format.getShort(2) & 0xFFFF;
+					sampleRate = format.getInt(4);
+					int bitsPerSample = format.getShort(14) & 0xFFFF;
+					if(formatTag == FORMAT_EXTENSIBLE && format.limit() >= 26) {
+						//The format is stored in the first bytes of the sub format GUID
+						formatTag = format.getShort(24) & 0xFFFF;
+					}
+					encoding = getEncoding(formatTag, bitsPerSample);
+				} else if(id == fourCC("data")) {
+					if(encoding == null || channels == 0 || sampleRate <= 0) {
+						return null;
+					}
+					//Streamed files can contain a wrong size, so the size is limited by the file
+					long dataSize = Math.min(size, file.size() - content);
+					long frameCount = dataSize / (encoding.getBytesPerSample() * channels);
+					return new WaveFile(path, encoding, channels, sampleRate, content, frameCount);
+				}
+				//Chunks are aligned to two bytes
+				position = content + size + (size & 1);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Maps the samples of a single channel of the file as a store.
+	 * @param channel - Index of the channel inside of a frame.
+	 * @return Store reading directly from the file.
+	 * @throws IOException
+	 */
+	public SampleStore map(int channel) throws IOException {
+		return new MappedPcmSampleStore(path, dataOffset, frameCount, encoding, channels, channel);
+	}
+
+	public SampleBuffer.Encoding getEncoding() {
+		return encoding;
+	}
+
+	public int getBitDepth() {
+		return encoding.getBitDepth();
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return Length of the file in seconds.
+	 */
+	public long getLength() {
+		return frameCount / sampleRate;
+	}
+
+	private static SampleBuffer.Encoding getEncoding(int formatTag, int bitsPerSample) {
+		if(formatTag == FORMAT_PCM) {
+			switch (bitsPerSample) {
+			case 8:
+				return SampleBuffer.Encoding.PCM_UNSIGNED_8;
+			case 16:
+				return SampleBuffer.Encoding.PCM_SIGNED_16;
+			case 24:
+				return SampleBuffer.Encoding.PCM_SIGNED_24;
+			case 32:
+				return SampleBuffer.Encoding.PCM_SIGNED_32;
+			}
+		} else if(formatTag == FORMAT_FLOAT) {
+			switch (bitsPerSample) {
+			case 32:
+				return SampleBuffer.Encoding.FLOAT_32;
+			case 64:
+				return SampleBuffer.Encoding.FLOAT_64;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a part of the file.
+	 * @return Little endian buffer with the read bytes or null if nothing could be read.
+	 * @throws IOException
+	 */
+	private static ByteBuffer read(FileChannel file, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if(file.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		if(buffer.position() < Math.min(length, CHUNK_HEADER_SIZE)) {
+			return null;
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @return Four character code as little endian integer.
+	 */
+	private static int fourCC(String code) {
+		return (code.charAt(0)) | (code.charAt(1) << 8) | (code.charAt(2) << 16) | (code.charAt(3) << 24);
+	}
+}
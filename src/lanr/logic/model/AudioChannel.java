@@ -2,12 +2,9 @@ package lanr.logic.model;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
-import lanr.logic.Utils;
-
 /**
  * @author Nicolas Bruch
  * 
@@ -23,13 +20,27 @@ public class AudioChannel {
 	 * Audio file containing the channel.
 	 */
 	private AudioData parent;
+	/**
+	 * Index of the channel in the file.
+	 */
 	private int index;
-	private long length;
+	/**
+	 * Index of the stream containing the channel.
+	 */
+	private final int streamIndex;
+	/**
+	 * Index of the channel inside of its stream.
+	 */
+	private final int streamChannel;
+	/**
+	 * Number of samples of the channel. Estimated from the container until
+	 * all samples have been read.
+	 */
+	private volatile long frameCount;
 	/**
 	 * Bit depth per sample.
 	 */
 	private final int bitRate;
-	private final int bytesPerSample;
 	/**
 	 * Samples per second.
 	 */
@@ -37,67 +48,183 @@ public class AudioChannel {
 	/**
 	 * Samples of the audio channel.
 	 */
-	private byte[] samples;
+	private volatile SampleStore samples = new HeapSampleStore();
+	/**
+	 * Peaks of the samples for drawing the waveform, kept when the samples are released.
+	 */
+	private volatile PeakPyramid peaks = new PeakPyramid();
 	/**
-	 * List of found {@link Noise} types in the different channel of this audio
-	 * file.
+	 * Found {@link Noise}s of this channel, indexed by their location.
 	 */
-	private List<Noise> foundNoise = new ArrayList<Noise>();
+	private volatile NoiseStore foundNoise = new NoiseStore();
 	
-	public AudioChannel(int bitRate, int sampleRate, int index, long length) {
+	/**
+	 * @param bitRate - Bit depth per sample.
+	 * @param sampleRate - Samples per second.
+	 * @param index - Index of the channel in the file.
+	 * @param streamIndex - Index of the stream containing the channel.
+	 * @param streamChannel - Index of the channel inside of its stream.
+	 * @param frameCount - Expected number of samples, 0 if it is unknown.
+	 */
+	public AudioChannel(int bitRate, int sampleRate, int index, int streamIndex, int streamChannel, long frameCount) {
 		this.bitRate = bitRate;
 		this.sampleRate = sampleRate;
-		this.bytesPerSample = bitRate / 8;
 		this.index = index;
-		this.length = length;
+		this.streamIndex = streamIndex;
+		this.streamChannel = streamChannel;
+		this.frameCount = frameCount;
 	}
 
 	public void setParent(AudioData parent) {
 		this.parent = parent;
 	}
 	
-	public void addRawData(ByteBuffer buffer) {
-		
-		state.firePropertyChange(DATA_ADDED_PROPERTY,
-				null,
-				Utils.byteToShortConverter(bitRate, buffer.array()));
+	/**
+	 * Adds a block of decoded samples to the channel and notifies the listeners.
+	 * Samples which are already stored in the channel or summarised by its
+	 * peaks are not added again.<br>
+	 * The listeners receive the block itself, which is only valid during the
+	 * call unless the listener {@link SampleBlock#retain() retains} it.
+	 * @param block - Block of samples.
+	 */
+	public void addSamples(SampleBlock block) {
+		long stored = samples.size() - block.getPosition();
+		if(stored < block.getLength()) {
+			int skipped = (int) Math.max(0, stored);
+			samples.append(block.getSamples(), skipped, block.getLength() - skipped);
+		}
+		//Replayed samples are stored already, but may not have been summarised yet
+		long summarised = peaks.getSampleCount() - block.getPosition();
+		if(!peaks.isReadOnly() && summarised >= 0 && summarised < block.getLength()) {
+			peaks.add(block.getSamples(), (int) summarised, block.getLength() - (int) summarised);
+		}
+		state.firePropertyChange(DATA_ADDED_PROPERTY, null, block);
 	}
 
+	/**
+	 * Replaces all found noises of the channel.
+	 * @param foundNoise - Noises found in this channel.
+	 */
 	public void setFoundNoise(List<Noise> foundNoise) {
-		this.foundNoise = foundNoise;
-		foundNoise.forEach(n -> n.setChannel(index));
+		this.foundNoise = new NoiseStore(foundNoise, index);
 		parent.setAnalyzed(true);
 		parent.calculateSeverity();
 	}
 
-	public void addNoise(Noise noise) {
-		this.foundNoise.add(noise);
-		noise.setChannel(index);
-		parent.setAnalyzed(true);
+	/**
+	 * Removes all found noises before the channel is searched again.
+	 */
+	public void clearFoundNoise() {
+		this.foundNoise = new NoiseStore();
 		parent.calculateSeverity();
 	}
 
+	/**
+	 * Adds a copy of a noise to the channel.
+	 * @param noise - Noise found in this channel.
+	 * @return The stored noise.
+	 */
+	public Noise addNoise(Noise noise) {
+		Noise stored = this.foundNoise.add(noise, index);
+		parent.addSeverity(stored.getSeverity());
+		parent.setAnalyzed(true);
+		return stored;
+	}
+
+	/**
+	 * Adds multiple noises and notifies the listeners of the audio data only once.
+	 * @param noises - Noises found in this channel.
+	 */
+	public void addNoises(Collection<Noise> noises) {
+		parent.addSeverity(this.foundNoise.addAll(noises, index));
+		parent.setAnalyzed(true);
+	}
+
+	/**
+	 * @return All found noises ordered by their location.
+	 */
 	public List<Noise> getFoundNoise() {
-		return foundNoise;
+		return foundNoise.getAll();
+	}
+
+	/**
+	 * @param from - First sample of the range.
+	 * @param to - First sample after the range.
+	 * @return Found noises overlapping the range ordered by their location.
+	 */
+	public List<Noise> getFoundNoise(long from, long to) {
+		return foundNoise.getOverlapping(from, to);
+	}
+
+	/**
+	 * @return Sum of the severities of all found noises.
+	 */
+	public double getSeverity() {
+		return foundNoise.getSeverity();
+	}
+
+	/**
+	 * @param type - Type of the noises.
+	 * @return Sum of the severities of the found noises of the type.
+	 */
+	public double getSeverity(NoiseType type) {
+		return foundNoise.getSeverity(type);
 	}
 
 	public void removeNoise(Noise noise) {
-		this.foundNoise.remove(noise);
-		parent.calculateSeverity();
+		parent.addSeverity(-this.foundNoise.remove(noise));
 	}
 
-	public byte[] getSamples() {
+	/**
+	 * Replaces the store of the samples. Previously stored samples are released.
+	 * @param store - Store for the samples of this channel.
+	 */
+	public void setSampleStore(SampleStore store) {
+		SampleStore old = this.samples;
+		this.samples = store;
+		old.close();
+	}
+
+	public SampleStore getSampleStore() {
 		return samples;
 	}
 
-	private byte[] getValueRange(int fromIndex, int toIndex) {
-		// Double the size because of byte short conversion
-		int size = (toIndex - fromIndex) * bytesPerSample;
-		byte[] data = new byte[size];
-		int counter = fromIndex * bytesPerSample;
-		for (int i = 0; i < size; i++) {
-			data[i] = samples[counter];
-			counter++;
+	/**
+	 * @return Peaks of all samples added to the channel so far.
+	 */
+	public PeakPyramid getPeaks() {
+		return peaks;
+	}
+
+	/**
+	 * Replaces the peaks of the channel with peaks which were stored before,
+	 * so the waveform can be drawn without decoding the samples.
+	 * @param peaks - Peaks of all samples of the channel.
+	 */
+	public void setPeaks(PeakPyramid peaks) {
+		this.peaks = peaks;
+	}
+	
+	/**
+	 * Releases the stored samples of this channel.
+	 */
+	public void releaseSamples() {
+		setSampleStore(new HeapSampleStore());
+	}
+	
+	/**
+	 * @return Number of samples stored for this channel.
+	 */
+	public long getSampleCount() {
+		return samples.size();
+	}
+
+	private short[] getValueRange(long fromIndex, long toIndex) {
+		short[] data = new short[Math.toIntExact(toIndex - fromIndex)];
+		int read = samples.read(fromIndex, data, 0, data.length);
+		if(read < data.length) {
+			throw new IndexOutOfBoundsException("Range " + fromIndex + " - " + toIndex
+					+ " exceeds the " + samples.size() + " samples of the channel");
 		}
 		return data;
 	}
@@ -107,12 +234,8 @@ public class AudioChannel {
 	 * @param index - Index of the sample.
 	 * @return Sample 16 bit value for the given index.
 	 */
-	public short get16BitSampleValue(int index) {
-		byte[] data = { 
-				samples[index * bytesPerSample],
-				samples[index * bytesPerSample + 1]
-					};
-		return Utils.byteToShortConverter(bytesPerSample, data)[0];
+	public short get16BitSampleValue(long index) {
+		return getValueRange(index, index + 1)[0];
 	}
 
 	/**
@@ -121,8 +244,8 @@ public class AudioChannel {
 	 * @param toIndex - End index of the sample.
 	 * @return Sample 16 bit values for the given range.
 	 */
-	public short[] get16BitSampleValues(int fromIndex, int toIndex) {
-		return Utils.byteToShortConverter(bytesPerSample, getValueRange(fromIndex, toIndex));
+	public short[] get16BitSampleValues(long fromIndex, long toIndex) {
+		return getValueRange(fromIndex, toIndex);
 	}
 
 	/**
@@ -130,12 +253,8 @@ public class AudioChannel {
 	 * @param index - Index of the sample value.
 	 * @return Sample 64 bit value for the given index.
 	 */
-	public double get64BitSampleValue(int index) {
-		byte[] data = { 
-				samples[index * bytesPerSample],
-				samples[index * bytesPerSample + 1]
-					};
-		return Utils.byteToDoubleConverter(bytesPerSample, data)[0];
+	public double get64BitSampleValue(long index) {
+		return get16BitSampleValue(index);
 	}
 
 	/**
@@ -145,8 +264,13 @@ public class AudioChannel {
 	 * @param toIndex - End index of the sample.
 	 * @return Sample 64 bit values for the given range.
 	 */
-	public double[] get64BitSampleValues(int fromIndex, int toIndex) {
-		return Utils.byteToDoubleConverter(bytesPerSample, getValueRange(fromIndex, toIndex));
+	public double[] get64BitSampleValues(long fromIndex, long toIndex) {
+		short[] values = getValueRange(fromIndex, toIndex);
+		double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = values[i];
+		}
+		return result;
 	}
 	
 	public void addChangeListener(PropertyChangeListener listener) {
@@ -154,12 +278,12 @@ public class AudioChannel {
 	}
 
 	/**
-	 * Converts all samples into 16 bit values.
-	 * This will double the memory used, so use with caution!
+	 * Copies all samples into a 16 bit array.
+	 * This will load the whole channel into the heap, so use with caution!
 	 * @return
 	 */
 	public short[] get16BitSampleValues() {
-		return Utils.byteToShortConverter(bytesPerSample, samples);
+		return getValueRange(0, samples.size());
 	}
 
 	public int getBitDepth() {
@@ -174,7 +298,40 @@ public class AudioChannel {
 		return index;
 	}
 
+	public int getStreamIndex() {
+		return streamIndex;
+	}
+
+	public int getStreamChannel() {
+		return streamChannel;
+	}
+
+	/**
+	 * @return Number of samples of the channel. Exact once all samples have
+	 *         been read, before that estimated from the container.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @param frameCount - Exact number of samples of the channel.
+	 */
+	public void setFrameCount(long frameCount) {
+		this.frameCount = frameCount;
+	}
+
+	/**
+	 * @return Duration of the channel in seconds.
+	 */
+	public double getDuration() {
+		return sampleRate > 0 ? (double) frameCount / sampleRate : 0;
+	}
+
+	/**
+	 * @return Length of the channel in whole seconds.
+	 */
 	public long getLength() {
-		return length;
+		return sampleRate > 0 ? frameCount / sampleRate : 0;
 	}
 }
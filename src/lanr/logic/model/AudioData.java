@@ -23,7 +23,7 @@ public class AudioData {
 	/**
 	 * Represents the amount and intensity of the found audio noises. 
 	 */
-	private double severity;
+	private volatile double severity;
 	private final List<AudioChannel> audioChannels;
 	private boolean isAnalyzed;
 
@@ -41,15 +41,34 @@ public class AudioData {
 
 	/**
 	 * Calculates the severity of all found {@link Noise} types
-	 * found in all {@link AudioChannel}s.
+	 * found in all {@link AudioChannel}s from the totals of the channels.
 	 */
-	public void calculateSeverity() {
-		severity = 0;
+	public synchronized void calculateSeverity() {
+		double sum = 0;
 		for(AudioChannel channel : audioChannels) {
-			for (Noise noise : channel.getFoundNoise()) {
-				severity += noise.getSeverity();
-			}
-		}	
+			sum += channel.getSeverity();
+		}
+		severity = sum;
+	}
+
+	/**
+	 * Updates the severity after noises have been added or removed.
+	 * @param delta - Severity of the added noises, negative for removed noises.
+	 */
+	public synchronized void addSeverity(double delta) {
+		severity += delta;
+	}
+
+	/**
+	 * @param type - Type of the noises.
+	 * @return Sum of the severities of the noises of the type in all channels.
+	 */
+	public double getSeverity(NoiseType type) {
+		double sum = 0;
+		for(AudioChannel channel : audioChannels) {
+			sum += channel.getSeverity(type);
+		}
+		return sum;
 	}
 	
 	public void addChangeListener(PropertyChangeListener listener) {
@@ -72,6 +91,37 @@ public class AudioData {
 		}
 	}
 
+	/**
+	 * Releases the decoded samples of all channels.
+	 */
+	public void releaseSamples() {
+		for(AudioChannel channel : audioChannels) {
+			channel.releaseSamples();
+		}
+	}
+
+	/**
+	 * @return Length of the longest channel in seconds.
+	 */
+	public long getLength() {
+		long length = 0;
+		for(AudioChannel channel : audioChannels) {
+			length = Math.max(length, channel.getLength());
+		}
+		return length;
+	}
+
+	/**
+	 * @return Duration of the longest channel in seconds.
+	 */
+	public double getDuration() {
+		double duration = 0;
+		for(AudioChannel channel : audioChannels) {
+			duration = Math.max(duration, channel.getDuration());
+		}
+		return duration;
+	}
+
 	public List<AudioChannel> getAllChannel() {
 		return audioChannels;
 	}
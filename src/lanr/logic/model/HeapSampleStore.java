@@ -0,0 +1,90 @@
+package lanr.logic.model;
+
+/**
+ * @author Nicolas Bruch
+ * 
+ *         Keeps the samples on the heap in fixed size chunks, so the store
+ *         never has to copy existing samples when growing.
+ *
+ */
+public class HeapSampleStore implements SampleStore {
+
+	private static final int CHUNK_SIZE = 1 << 20;
+	
+	private volatile short[][] chunks = new short[0][];
+	private volatile long size = 0;
+	
+	@Override
+	public void append(short[] samples, int offset, int length) {
+		long end = size + length;
+		allocate(end);
+		write(size, samples, offset, length);
+		size = end;
+	}
+	
+	@Override
+	public void write(long position, short[] samples, int offset, int length) {
+		short[][] current = chunks;
+		int end = offset + length;
+		while(offset < end) {
+			int chunkIndex = (int) (position / CHUNK_SIZE);
+			int chunkOffset = (int) (position % CHUNK_SIZE);
+			int count = Math.min(end - offset, CHUNK_SIZE - chunkOffset);
+			System.arraycopy(samples, offset, current[chunkIndex], chunkOffset, count);
+			offset += count;
+			position += count;
+		}
+	}
+	
+	@Override
+	public void resize(long size) {
+		allocate(size);
+		this.size = size;
+	}
+	
+	/**
+	 * Creates the chunks needed to hold the given number of samples.
+	 * @param sampleCount - Number of samples.
+	 */
+	private void allocate(long sampleCount) {
+		short[][] current = chunks;
+		int chunkCount = (int) ((sampleCount + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		if(chunkCount > current.length) {
+			short[][] grown = new short[chunkCount][];
+			System.arraycopy(current, 0, grown, 0, current.length);
+			for (int i = current.length; i < chunkCount; i++) {
+				grown[i] = new short[CHUNK_SIZE];
+			}
+			chunks = grown;
+		}
+	}
+
+	@Override
+	public int read(long position, short[] target, int offset, int length) {
+		//Size has to be read first, it is published after the chunks
+		long available = size;
+		short[][] current = chunks;
+		int count = (int) Math.max(0, Math.min(length, available - position));
+		int copied = 0;
+		while(copied < count) {
+			int chunkIndex = (int) (position / CHUNK_SIZE);
+			int chunkOffset = (int) (position % CHUNK_SIZE);
+			int n = Math.min(count - copied, CHUNK_SIZE - chunkOffset);
+			System.arraycopy(current[chunkIndex], chunkOffset, target, offset + copied, n);
+			copied += n;
+			position += n;
+		}
+		return copied;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public void close() {
+		chunks = new short[0][];
+		size = 0;
+	}
+}
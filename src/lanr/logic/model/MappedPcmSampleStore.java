@@ -0,0 +1,116 @@
+package lanr.logic.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Maps uncompressed interleaved PCM data of a file read only. The
+ *         samples of one of the interleaved channels are converted into 16
+ *         bit values while they are read, so the file can be used as a
+ *         channel without decoding it first.
+ *
+ */
+public class MappedPcmSampleStore implements SampleStore {
+
+	/**
+	 * Maximum number of bytes per mapped segment.
+	 */
+	private static final int MAX_SEGMENT_BYTES = 1 << 28;
+
+	private final Path file;
+	private final FileChannel fileChannel;
+	private final SampleBuffer[] segments;
+	/**
+	 * Index of the read channel inside of a frame.
+	 */
+	private final int channel;
+	/**
+	 * Number of frames per segment.
+	 */
+	private final int segmentFrames;
+	private final long size;
+
+	/**
+	 * @param file - File containing the samples.
+	 * @param dataOffset - Position of the first frame in the file.
+	 * @param frameCount - Number of frames.
+	 * @param encoding - Encoding of the samples.
+	 * @param channels - Number of interleaved channels per frame.
+	 * @param channel - Index of the read channel inside of a frame.
+	 * @throws IOException
+	 */
+	public MappedPcmSampleStore(Path file, long dataOffset, long frameCount,
+			SampleBuffer.Encoding encoding, int channels, int channel) throws IOException {
+		if(channel < 0 || channel >= channels) {
+			throw new IllegalArgumentException("Channel " + channel + " is not part of the " + channels + " channels");
+		}
+		this.file = file;
+		this.channel = channel;
+		this.fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+		this.size = frameCount;
+		int frameSize = encoding.getBytesPerSample() * channels;
+		this.segmentFrames = MAX_SEGMENT_BYTES / frameSize;
+		if(dataOffset + frameCount * frameSize > fileChannel.size()) {
+			fileChannel.close();
+			throw new IOException("File " + file + " does not contain " + frameCount + " frames");
+		}
+		int segmentCount = (int) ((frameCount + segmentFrames - 1) / segmentFrames);
+		this.segments = new SampleBuffer[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			long frames = Math.min(segmentFrames, frameCount - (long) i * segmentFrames);
+			long start = dataOffset + (long) i * segmentFrames * frameSize;
+			segments[i] = new SampleBuffer(
+					fileChannel.map(FileChannel.MapMode.READ_ONLY, start, frames * frameSize),
+					encoding,
+					channels);
+		}
+	}
+
+	@Override
+	public void append(short[] samples, int offset, int length) {
+		throw new UnsupportedOperationException("Samples of " + file + " are mapped read only");
+	}
+
+	@Override
+	public void write(long position, short[] samples, int offset, int length) {
+		throw new UnsupportedOperationException("Samples of " + file + " are mapped read only");
+	}
+
+	@Override
+	public void resize(long size) {
+		throw new UnsupportedOperationException("Samples of " + file + " are mapped read only");
+	}
+
+	@Override
+	public int read(long position, short[] target, int offset, int length) {
+		int count = (int) Math.max(0, Math.min(length, size - position));
+		int copied = 0;
+		while (copied < count) {
+			int segmentIndex = (int) (position / segmentFrames);
+			int segmentOffset = (int) (position % segmentFrames);
+			int n = segments[segmentIndex].read(segmentOffset, channel, target, offset + copied, count - copied);
+			copied += n;
+			position += n;
+		}
+		return copied;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public void close() {
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not close sample file " + file, e);
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package lanr.logic.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Nicolas Bruch
+ * 
+ *         Stores the samples in a temporary file which is memory mapped in
+ *         segments. Only the pages currently in use are kept in memory, so
+ *         the heap usage does not depend on the length of the recording.<br>
+ *         Existing files containing 16 bit little endian samples can be
+ *         mapped read only.
+ *
+ */
+public class MappedSampleStore implements SampleStore {
+
+	/**
+	 * Samples per mapped segment.
+	 */
+	private static final int SEGMENT_SIZE = 1 << 26;
+	private static final int BYTES_PER_SAMPLE = 2;
+	
+	private final Path file;
+	private final FileChannel fileChannel;
+	/**
+	 * Position of the first sample in the file.
+	 */
+	private final long dataOffset;
+	private final boolean readOnly;
+	private volatile ShortBuffer[] segments = new ShortBuffer[0];
+	private volatile long size = 0;
+	
+	/**
+	 * Creates an empty store backed by a temporary file.
+	 * @throws IOException
+	 */
+	public MappedSampleStore() throws IOException {
+		this.file = Files.createTempFile("lanr-", ".pcm");
+		this.file.toFile().deleteOnExit();
+		this.fileChannel = FileChannel.open(file,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+		this.dataOffset = 0;
+		this.readOnly = false;
+	}
+	
+	/**
+	 * Maps the samples of an existing file read only.
+	 * @param file - File containing the samples.
+	 * @param dataOffset - Position of the first sample in the file.
+	 * @param sampleCount - Number of samples in the file.
+	 * @throws IOException
+	 */
+	public MappedSampleStore(Path file, long dataOffset, long sampleCount) throws IOException {
+		this.file = file;
+		this.fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+		this.dataOffset = dataOffset;
+		this.readOnly = true;
+		if(dataOffset + sampleCount * BYTES_PER_SAMPLE > fileChannel.size()) {
+			fileChannel.close();
+			throw new IOException("File " + file + " does not contain " + sampleCount + " samples");
+		}
+		int segmentCount = (int) ((sampleCount + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		ShortBuffer[] mapped = new ShortBuffer[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			long samples = Math.min(SEGMENT_SIZE, sampleCount - (long) i * SEGMENT_SIZE);
+			mapped[i] = fileChannel
+					.map(FileChannel.MapMode.READ_ONLY, getSegmentStart(i), samples * BYTES_PER_SAMPLE)
+					.order(ByteOrder.LITTLE_ENDIAN)
+					.asShortBuffer();
+		}
+		this.segments = mapped;
+		this.size = sampleCount;
+	}
+	
+	@Override
+	public void append(short[] samples, int offset, int length) {
+		checkWritable();
+		long end = size + length;
+		allocate(end);
+		write(size, samples, offset, length);
+		size = end;
+	}
+	
+	@Override
+	public void write(long position, short[] samples, int offset, int length) {
+		checkWritable();
+		ShortBuffer[] current = segments;
+		int end = offset + length;
+		while(offset < end) {
+			int segmentIndex = (int) (position / SEGMENT_SIZE);
+			int segmentOffset = (int) (position % SEGMENT_SIZE);
+			int count = Math.min(end - offset, SEGMENT_SIZE - segmentOffset);
+			ShortBuffer segment = current[segmentIndex].duplicate();
+			segment.position(segmentOffset);
+			segment.put(samples, offset, count);
+			offset += count;
+			position += count;
+		}
+	}
+	
+	@Override
+	public void resize(long size) {
+		checkWritable();
+		allocate(size);
+		this.size = size;
+	}
+
+	@Override
+	public int read(long position, short[] target, int offset, int length) {
+		//Size has to be read first, it is published after the segments
+		long available = size;
+		ShortBuffer[] current = segments;
+		int count = (int) Math.max(0, Math.min(length, available - position));
+		int copied = 0;
+		while(copied < count) {
+			int segmentIndex = (int) (position / SEGMENT_SIZE);
+			int segmentOffset = (int) (position % SEGMENT_SIZE);
+			int n = Math.min(count - copied, SEGMENT_SIZE - segmentOffset);
+			ShortBuffer segment = current[segmentIndex].duplicate();
+			segment.position(segmentOffset);
+			segment.get(target, offset + copied, n);
+			copied += n;
+			position += n;
+		}
+		return copied;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public void close() {
+		segments = new ShortBuffer[0];
+		size = 0;
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not close sample file " + file, e);
+		}
+	}
+	
+	/**
+	 * Maps the segments needed to hold the given number of samples.
+	 * @param sampleCount - Number of samples.
+	 */
+	private void allocate(long sampleCount) {
+		ShortBuffer[] current = segments;
+		int segmentCount = (int) ((sampleCount + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		if(segmentCount <= current.length) {
+			return;
+		}
+		ShortBuffer[] grown = new ShortBuffer[segmentCount];
+		System.arraycopy(current, 0, grown, 0, current.length);
+		try {
+			for (int i = current.length; i < segmentCount; i++) {
+				grown[i] = fileChannel
+						.map(FileChannel.MapMode.READ_WRITE, getSegmentStart(i), (long) SEGMENT_SIZE * BYTES_PER_SAMPLE)
+						.order(ByteOrder.LITTLE_ENDIAN)
+						.asShortBuffer();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not map sample file " + file, e);
+		}
+		segments = grown;
+	}
+	
+	private long getSegmentStart(int segmentIndex) {
+		return dataOffset + (long) segmentIndex * SEGMENT_SIZE * BYTES_PER_SAMPLE;
+	}
+	
+	private void checkWritable() {
+		if(readOnly) {
+			throw new UnsupportedOperationException("Samples of " + file + " are mapped read only");
+		}
+	}
+}
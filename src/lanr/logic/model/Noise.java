@@ -9,12 +9,25 @@ package lanr.logic.model;
 public class Noise {
 
 	private double severity;
-	private int location;
-	private int length;
+	/**
+	 * Index of the first sample of the noise.
+	 */
+	private long location;
+	/**
+	 * Number of samples of the noise.
+	 */
+	private long length;
 	private int channel;
 	private NoiseType type;
 
-	public Noise(NoiseType type, int location, int length, double severity) {
+	/**
+	 * Creates a noise without values, for subclasses which provide them
+	 * through the getters.
+	 */
+	protected Noise() {
+	}
+
+	public Noise(NoiseType type, long location, long length, double severity) {
 		this.type = type;
 		this.location = location;
 		this.severity = severity;
@@ -29,11 +42,11 @@ public class Noise {
 		this.severity = severity;
 	}
 
-	public int getLocation() {
+	public long getLocation() {
 		return location;
 	}
 
-	public void setLocation(int location) {
+	public void setLocation(long location) {
 		this.location = location;
 	}
 
@@ -45,11 +58,11 @@ public class Noise {
 		this.type = type;
 	}
 
-	public int getLength() {
+	public long getLength() {
 		return length;
 	}
 
-	public void setLength(int length) {
+	public void setLength(long length) {
 		this.length = length;
 	}
 
@@ -0,0 +1,457 @@
+package lanr.logic.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Stores the noises of a channel in an interval tree, so the noises
+ *         overlapping a range of samples can be found without looking at all
+ *         of them. The tree is a treap ordered by the location of the noises,
+ *         every node additionally knows the largest end of its subtree, which
+ *         allows skipping subtrees ending before the range.<br>
+ *         The noises are kept as rows of a {@link NoiseTable} and the tree
+ *         consists of further primitive columns. Besides the 27 bytes of its
+ *         row a noise takes 20 bytes for its children, the largest end of its
+ *         subtree and the generation of its row, and no object. The rows of
+ *         removed noises are reused.<br>
+ *         The noises returned by the store are lightweight views, which are
+ *         created when they are requested, only refer to their row and read
+ *         their values from the table. They can't be changed and become
+ *         invalid when their noise is removed from the store.<br>
+ *         Adding and removing a noise takes O(log n) on average. The sum of
+ *         the severities of all noises and of every noise type is updated
+ *         with every change instead of being calculated again.
+ *
+ */
+public class NoiseStore {
+
+	private static final int NONE = -1;
+	private static final int TYPE_COUNT = NoiseType.values().length;
+
+	/**
+	 * Noise returned by the store, which only refers to its row. The
+	 * generation tells whether the row still contains the same noise.
+	 */
+	private static final class StoredNoise extends Noise {
+
+		private final NoiseStore store;
+		private final int row;
+		private final int generation;
+
+		private StoredNoise(NoiseStore store, int row) {
+			this.store = store;
+			this.row = row;
+			this.generation = store.generations[row];
+		}
+
+		@Override
+		public double getSeverity() {
+			synchronized (store) {
+				return store.table.getSeverity(getRow());
+			}
+		}
+
+		@Override
+		public long getLocation() {
+			synchronized (store) {
+				return store.table.getLocation(getRow());
+			}
+		}
+
+		@Override
+		public NoiseType getType() {
+			synchronized (store) {
+				return store.table.getType(getRow());
+			}
+		}
+
+		@Override
+		public long getLength() {
+			synchronized (store) {
+				return store.table.getLength(getRow());
+			}
+		}
+
+		@Override
+		public int getChannel() {
+			synchronized (store) {
+				return store.table.getChannel(getRow());
+			}
+		}
+
+		/**
+		 * @return Row of the noise, if it is still stored.
+		 */
+		private int getRow() {
+			if(!isStored()) {
+				throw new IllegalStateException("The noise has been removed from the store");
+			}
+			return row;
+		}
+
+		private boolean isStored() {
+			return store.generations[row] == generation;
+		}
+
+		@Override
+		public void setSeverity(double severity) {
+			throw new UnsupportedOperationException("A stored noise musn't be changed");
+		}
+
+		@Override
+		public void setLocation(long location) {
+			throw new UnsupportedOperationException("A stored noise musn't be changed");
+		}
+
+		@Override
+		public void setType(NoiseType type) {
+			throw new UnsupportedOperationException("A stored noise musn't be changed");
+		}
+
+		@Override
+		public void setLength(long length) {
+			throw new UnsupportedOperationException("A stored noise musn't be changed");
+		}
+
+		@Override
+		public void setChannel(int channel) {
+			throw new UnsupportedOperationException("A stored noise musn't be changed");
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof StoredNoise && ((StoredNoise) other).store == store
+					&& ((StoredNoise) other).row == row && ((StoredNoise) other).generation == generation;
+		}
+
+		@Override
+		public int hashCode() {
+			return (System.identityHashCode(store) * 31 + row) * 31 + generation;
+		}
+	}
+
+	private final NoiseTable table = new NoiseTable();
+	/*
+	 * Columns of the tree, indexed by the rows of the table
+	 */
+	private int[] left = new int[table.capacity()];
+	private int[] right = new int[table.capacity()];
+	/**
+	 * Largest end of all noises in the subtree of each node.
+	 */
+	private long[] maxEnd = new long[table.capacity()];
+	/**
+	 * Number of times each row has been removed, so views of a reused row
+	 * do not refer to the new noise.
+	 */
+	private int[] generations = new int[table.capacity()];
+	private int root = NONE;
+	private int size = 0;
+	private final double[] typeSeverities = new double[TYPE_COUNT];
+	private final int[] typeCounts = new int[TYPE_COUNT];
+	private double severity = 0;
+	/*
+	 * Second result of split
+	 */
+	private int splitLeft;
+	private int splitRight;
+
+	public NoiseStore() {
+	}
+
+	/**
+	 * @param noises - Noises which are added to the store.
+	 * @param channel - Index of the channel of the noises.
+	 */
+	public NoiseStore(Collection<Noise> noises, int channel) {
+		addAll(noises, channel);
+	}
+
+	/**
+	 * Adds a copy of a noise to the store.
+	 * @param noise - Noise to be added.
+	 * @param channel - Index of the channel of the noise.
+	 * @return The stored noise.
+	 */
+	public synchronized Noise add(Noise noise, int channel) {
+		int row = table.add(noise, channel);
+		if(left.length < table.capacity()) {
+			left = Arrays.copyOf(left, table.capacity());
+			right = Arrays.copyOf(right, table.capacity());
+			maxEnd = Arrays.copyOf(maxEnd, table.capacity());
+			generations = Arrays.copyOf(generations, table.capacity());
+		}
+		left[row] = NONE;
+		right[row] = NONE;
+		maxEnd[row] = table.getEnd(row);
+		root = insert(root, row);
+		size++;
+		severity += table.getSeverity(row);
+		typeSeverities[noise.getType().ordinal()] += table.getSeverity(row);
+		typeCounts[noise.getType().ordinal()]++;
+		return new StoredNoise(this, row);
+	}
+
+	/**
+	 * Adds copies of multiple noises to the store.
+	 * @param noises - Noises to be added.
+	 * @param channel - Index of the channel of the noises.
+	 * @return Sum of the severities of the added noises.
+	 */
+	public synchronized double addAll(Collection<Noise> noises, int channel) {
+		double added = 0;
+		for(Noise noise : noises) {
+			added += noise.getSeverity();
+			add(noise, channel);
+		}
+		return added;
+	}
+
+	/**
+	 * Removes a noise from the store. The noise is either returned by this
+	 * store or has the same values as a stored noise.
+	 * @param noise - Noise to be removed.
+	 * @return Severity of the removed noise or 0 if it is not contained in the store.
+	 */
+	public synchronized double remove(Noise noise) {
+		int row = find(noise);
+		if(row == NONE) {
+			return 0;
+		}
+		root = delete(root, row);
+		size--;
+		int type = table.getType(row).ordinal();
+		double removedSeverity = table.getSeverity(row);
+		typeCounts[type]--;
+		//Empty sums are reset, so rounding errors do not pile up
+		typeSeverities[type] = typeCounts[type] == 0 ? 0 : typeSeverities[type] - removedSeverity;
+		severity = size == 0 ? 0 : severity - removedSeverity;
+		generations[row]++;
+		table.remove(row);
+		return removedSeverity;
+	}
+
+	public synchronized boolean contains(Noise noise) {
+		return find(noise) != NONE;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return Sum of the severities of all noises.
+	 */
+	public synchronized double getSeverity() {
+		return severity;
+	}
+
+	/**
+	 * @param type - Type of the noises.
+	 * @return Sum of the severities of all noises of the type.
+	 */
+	public synchronized double getSeverity(NoiseType type) {
+		return typeSeverities[type.ordinal()];
+	}
+
+	/**
+	 * @param type - Type of the noises.
+	 * @return Number of noises of the type.
+	 */
+	public synchronized int getCount(NoiseType type) {
+		return typeCounts[type.ordinal()];
+	}
+
+	/**
+	 * @return All noises ordered by their location.
+	 */
+	public synchronized List<Noise> getAll() {
+		List<Noise> noises = new ArrayList<Noise>(size);
+		collect(root, noises);
+		return noises;
+	}
+
+	/**
+	 * Finds all noises which overlap a range of samples.
+	 * @param from - First sample of the range.
+	 * @param to - First sample after the range.
+	 * @return Noises ordered by their location.
+	 */
+	public synchronized List<Noise> getOverlapping(long from, long to) {
+		List<Noise> noises = new ArrayList<Noise>();
+		if(from < to) {
+			collectOverlapping(root, from, to, noises);
+		}
+		return noises;
+	}
+
+	private void collect(int node, List<Noise> noises) {
+		while (node != NONE) {
+			collect(left[node], noises);
+			noises.add(new StoredNoise(this, node));
+			node = right[node];
+		}
+	}
+
+	private void collectOverlapping(int node, long from, long to, List<Noise> noises) {
+		//Subtrees ending before the range can't contain an overlapping noise
+		while (node != NONE && maxEnd[node] > from) {
+			collectOverlapping(left[node], from, to, noises);
+			//All following noises start after the range
+			if(table.getLocation(node) >= to) {
+				return;
+			}
+			if(table.getEnd(node) > from) {
+				noises.add(new StoredNoise(this, node));
+			}
+			node = right[node];
+		}
+	}
+
+	/**
+	 * @return Row of a stored noise with the values of the given noise or NONE.
+	 */
+	private int find(Noise noise) {
+		if(noise instanceof StoredNoise && ((StoredNoise) noise).store == this) {
+			StoredNoise stored = (StoredNoise) noise;
+			return stored.isStored() ? stored.row : NONE;
+		}
+		return find(root, noise);
+	}
+
+	private int find(int node, Noise noise) {
+		while (node != NONE) {
+			long location = table.getLocation(node);
+			if(noise.getLocation() < location) {
+				node = left[node];
+			} else if(noise.getLocation() > location) {
+				node = right[node];
+			} else {
+				if(table.getType(node) == noise.getType() && table.getLength(node) == noise.getLength()
+						&& table.getSeverity(node) == noise.getSeverity()) {
+					return node;
+				}
+				//Noises with the same location can be in both subtrees
+				int found = find(left[node], noise);
+				if(found != NONE) {
+					return found;
+				}
+				node = right[node];
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Nodes are ordered by their location and then by their row, which stays the same while they are stored.
+	 */
+	private boolean isBefore(int a, int b) {
+		long locationA = table.getLocation(a);
+		long locationB = table.getLocation(b);
+		return locationA < locationB || (locationA == locationB && a < b);
+	}
+
+	/**
+	 * Priority of a node in the heap order of the treap. The row is hashed,
+	 * so the priorities are random but do not have to be stored.
+	 */
+	private static int getPriority(int row) {
+		int hash = row * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		return hash;
+	}
+
+	private void update(int node) {
+		long max = table.getEnd(node);
+		if(left[node] != NONE) {
+			max = Math.max(max, maxEnd[left[node]]);
+		}
+		if(right[node] != NONE) {
+			max = Math.max(max, maxEnd[right[node]]);
+		}
+		maxEnd[node] = max;
+	}
+
+	private int insert(int node, int row) {
+		if(node == NONE) {
+			return row;
+		}
+		if(getPriority(row) > getPriority(node)) {
+			split(node, row);
+			left[row] = splitLeft;
+			right[row] = splitRight;
+			update(row);
+			return row;
+		}
+		if(isBefore(row, node)) {
+			left[node] = insert(left[node], row);
+		} else {
+			right[node] = insert(right[node], row);
+		}
+		update(node);
+		return node;
+	}
+
+	/**
+	 * Splits a subtree into the nodes before and after a key node, which
+	 * are stored in splitLeft and splitRight.
+	 */
+	private void split(int node, int key) {
+		if(node == NONE) {
+			splitLeft = NONE;
+			splitRight = NONE;
+		} else if(isBefore(key, node)) {
+			split(left[node], key);
+			left[node] = splitRight;
+			update(node);
+			splitRight = node;
+		} else {
+			split(right[node], key);
+			right[node] = splitLeft;
+			update(node);
+			splitLeft = node;
+		}
+	}
+
+	private int delete(int node, int row) {
+		if(node == NONE) {
+			return NONE;
+		}
+		if(node == row) {
+			return join(left[node], right[node]);
+		}
+		if(isBefore(row, node)) {
+			left[node] = delete(left[node], row);
+		} else {
+			right[node] = delete(right[node], row);
+		}
+		update(node);
+		return node;
+	}
+
+	/**
+	 * Joins two subtrees, all nodes of the left one are before the right one.
+	 */
+	private int join(int leftTree, int rightTree) {
+		if(leftTree == NONE) {
+			return rightTree;
+		}
+		if(rightTree == NONE) {
+			return leftTree;
+		}
+		if(getPriority(leftTree) > getPriority(rightTree)) {
+			right[leftTree] = join(right[leftTree], rightTree);
+			update(leftTree);
+			return leftTree;
+		}
+		left[rightTree] = join(leftTree, left[rightTree]);
+		update(rightTree);
+		return rightTree;
+	}
+}
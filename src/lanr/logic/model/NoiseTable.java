@@ -0,0 +1,160 @@
+package lanr.logic.model;
+
+import java.util.Arrays;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Stores noises as rows of primitive columns instead of single
+ *         objects. A row takes 27 bytes, 8 each for the location, length and
+ *         severity, 2 for the channel and 1 for the type, so millions of
+ *         noises neither need much memory nor have to be visited by the
+ *         garbage collector.<br>
+ *         Rows are never changed, the index of a row stays the same until it
+ *         is removed. Removed rows are kept in a free list and reused by the
+ *         next rows added, before the columns grow. The table is not
+ *         synchronized, it is guarded by the {@link NoiseStore} using it.
+ *
+ */
+public class NoiseTable {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final NoiseType[] TYPES = NoiseType.values();
+
+	private long[] locations;
+	private long[] lengths;
+	private double[] severities;
+	private short[] channels;
+	/**
+	 * Ordinal of the {@link NoiseType} of each row.
+	 */
+	private byte[] types;
+	/**
+	 * Number of rows which have been used, including the removed ones.
+	 */
+	private int used = 0;
+	/**
+	 * Stack of the removed rows.
+	 */
+	private int[] freeRows = new int[0];
+	private int freeCount = 0;
+
+	public NoiseTable() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param capacity - Number of rows which can be added before the columns grow.
+	 */
+	public NoiseTable(int capacity) {
+		capacity = Math.max(1, capacity);
+		locations = new long[capacity];
+		lengths = new long[capacity];
+		severities = new double[capacity];
+		channels = new short[capacity];
+		types = new byte[capacity];
+	}
+
+	/**
+	 * Adds a row, reusing a removed row if there is one.
+	 * @param type - Type of the noise.
+	 * @param location - Index of the first sample of the noise.
+	 * @param length - Number of samples of the noise.
+	 * @param severity - Severity of the noise.
+	 * @param channel - Index of the channel of the noise.
+	 * @return Index of the new row.
+	 */
+	public int add(NoiseType type, long location, long length, double severity, int channel) {
+		int row;
+		if(freeCount > 0) {
+			row = freeRows[--freeCount];
+		} else {
+			if(used == locations.length) {
+				grow();
+			}
+			row = used++;
+		}
+		locations[row] = location;
+		lengths[row] = length;
+		severities[row] = severity;
+		channels[row] = (short) channel;
+		types[row] = (byte) type.ordinal();
+		return row;
+	}
+
+	/**
+	 * Adds a row with the values of a noise.
+	 * @param noise - Noise to be copied.
+	 * @param channel - Index of the channel of the noise.
+	 * @return Index of the new row.
+	 */
+	public int add(Noise noise, int channel) {
+		return add(noise.getType(), noise.getLocation(), noise.getLength(), noise.getSeverity(), channel);
+	}
+
+	/**
+	 * Removes a row, its index is reused by one of the next rows added. The
+	 * row musn't be removed twice.
+	 * @param row - Index of the row.
+	 */
+	public void remove(int row) {
+		if(row < 0 || row >= used) {
+			throw new IllegalArgumentException("Row " + row + " doesn't exist");
+		}
+		if(freeCount == freeRows.length) {
+			freeRows = Arrays.copyOf(freeRows, Math.max(INITIAL_CAPACITY, freeCount * 2));
+		}
+		freeRows[freeCount++] = row;
+	}
+
+	/**
+	 * @return Number of rows which have not been removed.
+	 */
+	public int size() {
+		return used - freeCount;
+	}
+
+	/**
+	 * @return Number of rows which fit into the columns.
+	 */
+	public int capacity() {
+		return locations.length;
+	}
+
+	public long getLocation(int row) {
+		return locations[row];
+	}
+
+	public long getLength(int row) {
+		return lengths[row];
+	}
+
+	/**
+	 * @param row - Index of the row.
+	 * @return Index of the first sample after the noise.
+	 */
+	public long getEnd(int row) {
+		return locations[row] + Math.max(0, lengths[row]);
+	}
+
+	public double getSeverity(int row) {
+		return severities[row];
+	}
+
+	public int getChannel(int row) {
+		return channels[row];
+	}
+
+	public NoiseType getType(int row) {
+		return TYPES[types[row]];
+	}
+
+	private void grow() {
+		int capacity = locations.length + (locations.length >> 1) + 1;
+		locations = Arrays.copyOf(locations, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		severities = Arrays.copyOf(severities, capacity);
+		channels = Arrays.copyOf(channels, capacity);
+		types = Arrays.copyOf(types, capacity);
+	}
+}
@@ -0,0 +1,341 @@
+package lanr.logic.model;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Summarises the samples of a channel in several levels of bins, each
+ *         bin keeps the smallest and the largest sample it covers. The bins
+ *         of a level cover a multiple of the samples of the previous level,
+ *         so the levels are built incrementally while the samples arrive.<br>
+ *         The peak of any range of samples is calculated from the coarsest
+ *         bins completely inside of it, only the edges of the range are taken
+ *         from finer levels or the samples themselves. Drawing a waveform
+ *         therefore costs about the same for every length of the recording.<br>
+ *         Samples are added by a single writer, the peaks can be read by any
+ *         thread. A pyramid can also be created from bins which were stored
+ *         before, for example in a mapped file. Such a pyramid is read only.
+ *
+ */
+public class PeakPyramid {
+
+	/**
+	 * Number of samples per bin of each level.
+	 */
+	public static final int[] DEFAULT_BIN_SIZES = { 256, 4096, 65536 };
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int READ_SIZE = 4096;
+
+	/**
+	 * Bins of a single level.
+	 */
+	private static final class Level {
+
+		private final int binSize;
+		/**
+		 * Stored bins with alternating smallest and largest sample, null
+		 * if the bins are added to the arrays.
+		 */
+		private final ShortBuffer stored;
+		private volatile short[] mins = new short[INITIAL_CAPACITY];
+		private volatile short[] maxs = new short[INITIAL_CAPACITY];
+		/**
+		 * Number of completed bins, written after the bin itself.
+		 */
+		private volatile int count = 0;
+		/*
+		 * Incomplete bin, only used by the writer
+		 */
+		private short min = Short.MAX_VALUE;
+		private short max = Short.MIN_VALUE;
+		private int fill = 0;
+
+		private Level(int binSize) {
+			this.binSize = binSize;
+			this.stored = null;
+		}
+
+		private Level(int binSize, ShortBuffer stored) {
+			this.binSize = binSize;
+			this.stored = stored;
+			this.count = stored.limit() / 2;
+		}
+
+		private short getMin(int bin) {
+			return stored == null ? mins[bin] : stored.get(bin * 2);
+		}
+
+		private short getMax(int bin) {
+			return stored == null ? maxs[bin] : stored.get(bin * 2 + 1);
+		}
+
+		private void push(short binMin, short binMax) {
+			if(count == mins.length) {
+				int capacity = mins.length * 2;
+				mins = Arrays.copyOf(mins, capacity);
+				maxs = Arrays.copyOf(maxs, capacity);
+			}
+			mins[count] = binMin;
+			maxs[count] = binMax;
+			count++;
+			min = Short.MAX_VALUE;
+			max = Short.MIN_VALUE;
+			fill = 0;
+		}
+	}
+
+	private final Level[] levels;
+	private volatile long sampleCount = 0;
+
+	public PeakPyramid() {
+		this(DEFAULT_BIN_SIZES);
+	}
+
+	/**
+	 * @param binSizes - Ascending number of samples per bin of each level,
+	 *            every size has to be a multiple of the previous one.
+	 */
+	public PeakPyramid(int[] binSizes) {
+		checkBinSizes(binSizes);
+		levels = new Level[binSizes.length];
+		for (int i = 0; i < binSizes.length; i++) {
+			levels[i] = new Level(binSizes[i]);
+		}
+	}
+
+	/**
+	 * Creates a read only pyramid from stored bins.
+	 * @param binSizes - Ascending number of samples per bin of each level,
+	 *            every size has to be a multiple of the previous one.
+	 * @param bins - Bins of each level with alternating smallest and largest
+	 *            sample. The last bin of the finest level may cover less samples.
+	 * @param sampleCount - Number of samples summarised by the bins.
+	 */
+	public PeakPyramid(int[] binSizes, ShortBuffer[] bins, long sampleCount) {
+		checkBinSizes(binSizes);
+		if(bins.length != binSizes.length) {
+			throw new IllegalArgumentException("Every level needs its bins");
+		}
+		levels = new Level[binSizes.length];
+		for (int i = 0; i < binSizes.length; i++) {
+			levels[i] = new Level(binSizes[i], bins[i]);
+		}
+		this.sampleCount = sampleCount;
+	}
+
+	private static void checkBinSizes(int[] binSizes) {
+		if(binSizes.length == 0 || binSizes[0] <= 0) {
+			throw new IllegalArgumentException("At least one positive bin size is required");
+		}
+		for (int i = 1; i < binSizes.length; i++) {
+			if(binSizes[i] <= binSizes[i - 1] || binSizes[i] % binSizes[i - 1] != 0) {
+				throw new IllegalArgumentException("Every bin size has to be a larger multiple of the previous one");
+			}
+		}
+	}
+
+	/**
+	 * Adds the next samples of the channel.
+	 * @param samples - Array containing the samples.
+	 * @param offset - Index of the first sample.
+	 * @param length - Number of samples.
+	 */
+	public void add(short[] samples, int offset, int length) {
+		if(isReadOnly()) {
+			throw new UnsupportedOperationException("Stored peaks musn't be changed");
+		}
+		Level base = levels[0];
+		int end = offset + length;
+		while (offset < end) {
+			int binEnd = Math.min(end, offset + base.binSize - base.fill);
+			short min = base.min;
+			short max = base.max;
+			for (int i = offset; i < binEnd; i++) {
+				short sample = samples[i];
+				if(sample < min) {
+					min = sample;
+				}
+				if(sample > max) {
+					max = sample;
+				}
+			}
+			base.min = min;
+			base.max = max;
+			base.fill += binEnd - offset;
+			offset = binEnd;
+			if(base.fill == base.binSize) {
+				complete(0, min, max);
+			}
+		}
+		sampleCount += length;
+	}
+
+	/**
+	 * Stores a completed bin and adds it to the incomplete bin of the next level.
+	 */
+	private void complete(int index, short min, short max) {
+		levels[index].push(min, max);
+		if(index + 1 < levels.length) {
+			Level next = levels[index + 1];
+			next.min = (short) Math.min(next.min, min);
+			next.max = (short) Math.max(next.max, max);
+			next.fill += levels[index].binSize;
+			if(next.fill == next.binSize) {
+				complete(index + 1, next.min, next.max);
+			}
+		}
+	}
+
+	/**
+	 * @return True if the pyramid was created from stored bins.
+	 */
+	public boolean isReadOnly() {
+		return levels[0].stored != null;
+	}
+
+	/**
+	 * Calculates the peak of the samples after the last completed bin of the
+	 * finest level. Has to be called by the writer.
+	 * @param peak - Receives the smallest sample at index 0 and the largest at index 1.
+	 * @return False if all samples are covered by completed bins.
+	 */
+	public boolean getRemainder(short[] peak) {
+		Level base = levels[0];
+		if(isReadOnly() || base.fill == 0) {
+			return false;
+		}
+		peak[0] = base.min;
+		peak[1] = base.max;
+		return true;
+	}
+
+	/**
+	 * @return Number of samples added to the pyramid.
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	/**
+	 * @param level - Index of the level, 0 is the finest level.
+	 * @return Number of samples per bin.
+	 */
+	public int getBinSize(int level) {
+		return levels[level].binSize;
+	}
+
+	/**
+	 * @param level - Index of the level.
+	 * @return Number of completed bins.
+	 */
+	public int getBinCount(int level) {
+		return levels[level].count;
+	}
+
+	public short getMin(int level, int bin) {
+		return levels[level].getMin(bin);
+	}
+
+	public short getMax(int level, int bin) {
+		return levels[level].getMax(bin);
+	}
+
+	/**
+	 * Calculates the smallest and the largest sample of a range.
+	 * @param store - Store of the samples, used for the edges of the range
+	 *            which are not covered by a completed bin. Can be null, the
+	 *            edges are then taken from the bins of the finest level
+	 *            overlapping them.
+	 * @param from - First sample of the range.
+	 * @param to - First sample after the range.
+	 * @param peak - Receives the smallest sample at index 0 and the largest at index 1.
+	 * @return False if no sample of the range is available.
+	 */
+	public boolean getPeak(SampleStore store, long from, long to, short[] peak) {
+		peak[0] = Short.MAX_VALUE;
+		peak[1] = Short.MIN_VALUE;
+		collect(levels.length - 1, store, from, to, peak);
+		return peak[0] <= peak[1];
+	}
+
+	private void collect(int index, SampleStore store, long from, long to, short[] peak) {
+		if(from >= to) {
+			return;
+		}
+		if(index < 0) {
+			if(store != null && store.size() >= to) {
+				collectSamples(store, from, to, peak);
+			} else {
+				collectOverlapping(from, to, peak);
+			}
+			return;
+		}
+		Level level = levels[index];
+		//The count has to be read before the arrays
+		int count = level.count;
+		short[] mins = level.mins;
+		short[] maxs = level.maxs;
+		long firstBin = (from + level.binSize - 1) / level.binSize;
+		long lastBin = Math.min(to / level.binSize, count);
+		if(firstBin >= lastBin) {
+			collect(index - 1, store, from, to, peak);
+			return;
+		}
+		collect(index - 1, store, from, firstBin * level.binSize, peak);
+		short min = peak[0];
+		short max = peak[1];
+		if(level.stored != null) {
+			for (int bin = (int) firstBin; bin < lastBin; bin++) {
+				min = (short) Math.min(min, level.stored.get(bin * 2));
+				max = (short) Math.max(max, level.stored.get(bin * 2 + 1));
+			}
+		} else {
+			for (int bin = (int) firstBin; bin < lastBin; bin++) {
+				min = (short) Math.min(min, mins[bin]);
+				max = (short) Math.max(max, maxs[bin]);
+			}
+		}
+		peak[0] = min;
+		peak[1] = max;
+		collect(index - 1, store, lastBin * level.binSize, to, peak);
+	}
+
+	/**
+	 * Adds the bins of the finest level overlapping a range, used when its samples are not available.
+	 */
+	private void collectOverlapping(long from, long to, short[] peak) {
+		Level level = levels[0];
+		int count = level.count;
+		long lastBin = Math.min((to - 1) / level.binSize + 1, count);
+		for (long bin = from / level.binSize; bin < lastBin; bin++) {
+			peak[0] = (short) Math.min(peak[0], level.getMin((int) bin));
+			peak[1] = (short) Math.max(peak[1], level.getMax((int) bin));
+		}
+	}
+
+	private static void collectSamples(SampleStore store, long from, long to, short[] peak) {
+		short[] samples = new short[(int) Math.min(READ_SIZE, to - from)];
+		short min = peak[0];
+		short max = peak[1];
+		while (from < to) {
+			int read = store.read(from, samples, 0, (int) Math.min(samples.length, to - from));
+			if(read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				min = (short) Math.min(min, samples[i]);
+				max = (short) Math.max(max, samples[i]);
+			}
+			from += read;
+		}
+		peak[0] = min;
+		peak[1] = max;
+	}
+}
@@ -0,0 +1,106 @@
+package lanr.logic.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Nicolas Bruch
+ * 
+ *         Fixed size block of decoded 16 bit samples of a single
+ *         {@link AudioChannel}.<br>
+ *         Blocks taken from a {@link SampleBlockPool} are reused. Anyone
+ *         keeping a block after the call it was passed to has to
+ *         {@link #retain()} it and {@link #release()} it when done.
+ *
+ */
+public class SampleBlock {
+
+	private final short[] samples;
+	private final SampleBlockPool pool;
+	private final AtomicInteger references = new AtomicInteger(1);
+	/**
+	 * Number of valid samples in the block.
+	 */
+	private int length;
+	/**
+	 * Index of the first sample of the block inside of the channel.
+	 */
+	private long position;
+	
+	public SampleBlock(int size) {
+		this(size, null);
+	}
+	
+	SampleBlock(int size, SampleBlockPool pool) {
+		this.samples = new short[size];
+		this.pool = pool;
+	}
+	
+	/**
+	 * Copies samples into the free part of the block.
+	 * @param source - Array containing the samples.
+	 * @param offset - Index of the first sample in the source array.
+	 * @param count - Maximum number of samples to be copied.
+	 * @return Number of samples that have been copied.
+	 */
+	public int fill(short[] source, int offset, int count) {
+		int copied = Math.min(count, samples.length - length);
+		System.arraycopy(source, offset, samples, length, copied);
+		length += copied;
+		return copied;
+	}
+	
+	/**
+	 * Adds a reference to the block, so it is not reused until
+	 * the reference is released.
+	 */
+	public void retain() {
+		references.incrementAndGet();
+	}
+	
+	/**
+	 * Releases a reference to the block. The block returns to its pool
+	 * when the last reference has been released.
+	 */
+	public void release() {
+		int remaining = references.decrementAndGet();
+		if(remaining < 0) {
+			throw new IllegalStateException("Sample block has already been released");
+		}
+		if(remaining == 0 && pool != null) {
+			pool.recycle(this);
+		}
+	}
+	
+	/**
+	 * Empties the block before it is reused.
+	 */
+	void reset() {
+		length = 0;
+		position = 0;
+		references.set(1);
+	}
+	
+	public boolean isFull() {
+		return length == samples.length;
+	}
+	
+	public short[] getSamples() {
+		return samples;
+	}
+
+	public int getLength() {
+		return length;
+	}
+	
+	public long getPosition() {
+		return position;
+	}
+
+	public void setPosition(long position) {
+		this.position = position;
+	}
+	
+	public int getCapacity() {
+		return samples.length;
+	}
+}
@@ -0,0 +1,75 @@
+package lanr.logic.model;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Nicolas Bruch
+ * 
+ *         Pool of reusable {@link SampleBlock}s of the same size. Blocks are
+ *         taken with {@link #acquire()} and return to the pool when their last
+ *         reference has been released.
+ *
+ */
+public class SampleBlockPool {
+
+	private final int blockSize;
+	private final ConcurrentLinkedQueue<SampleBlock> freeBlocks = new ConcurrentLinkedQueue<SampleBlock>();
+	private final AtomicInteger createdBlocks = new AtomicInteger();
+	private final AtomicInteger blocksInUse = new AtomicInteger();
+	private final AtomicInteger peakBlocksInUse = new AtomicInteger();
+	
+	public SampleBlockPool(int blockSize) {
+		this.blockSize = blockSize;
+	}
+	
+	/**
+	 * Takes an empty block from the pool. A new block is only created if
+	 * all blocks are in use.
+	 * @return Empty block with a single reference.
+	 */
+	public SampleBlock acquire() {
+		SampleBlock block = freeBlocks.poll();
+		if(block == null) {
+			block = new SampleBlock(blockSize, this);
+			createdBlocks.incrementAndGet();
+		}
+		block.reset();
+		peakBlocksInUse.accumulateAndGet(blocksInUse.incrementAndGet(), Math::max);
+		return block;
+	}
+	
+	/**
+	 * Returns a block without references to the pool.
+	 * @param block - Block to be reused.
+	 */
+	void recycle(SampleBlock block) {
+		blocksInUse.decrementAndGet();
+		freeBlocks.offer(block);
+	}
+	
+	public int getBlockSize() {
+		return blockSize;
+	}
+	
+	/**
+	 * @return Number of blocks which have been acquired and not yet released.
+	 */
+	public int getBlocksInUse() {
+		return blocksInUse.get();
+	}
+	
+	/**
+	 * @return Highest number of blocks which have been in use at the same time.
+	 */
+	public int getPeakBlocksInUse() {
+		return peakBlocksInUse.get();
+	}
+	
+	/**
+	 * @return Number of blocks allocated by the pool.
+	 */
+	public int getCreatedBlocks() {
+		return createdBlocks.get();
+	}
+}
@@ -0,0 +1,247 @@
+package lanr.logic.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Typed view on interleaved little endian PCM data. The samples are
+ *         converted while they are copied into the arrays of the caller, so
+ *         no objects are created per sample.<br>
+ *         The channels are always read separately. Mixing them is left to
+ *         the caller, an average would halve clipping or hum which only
+ *         affects one of them.
+ *
+ */
+public class SampleBuffer {
+
+	/**
+	 * Encoding of a single sample.
+	 */
+	public enum Encoding {
+		/**
+		 * Unsigned 8 bit integer.
+		 */
+		PCM_UNSIGNED_8(1),
+		/**
+		 * Signed 16 bit integer.
+		 */
+		PCM_SIGNED_16(2),
+		/**
+		 * Signed 24 bit integer packed into 3 bytes.
+		 */
+		PCM_SIGNED_24(3),
+		/**
+		 * Signed 32 bit integer.
+		 */
+		PCM_SIGNED_32(4),
+		/**
+		 * 32 bit floating point value between -1 and 1.
+		 */
+		FLOAT_32(4),
+		/**
+		 * 64 bit floating point value between -1 and 1.
+		 */
+		FLOAT_64(8);
+
+		private final int bytesPerSample;
+
+		private Encoding(int bytesPerSample) {
+			this.bytesPerSample = bytesPerSample;
+		}
+
+		public int getBytesPerSample() {
+			return bytesPerSample;
+		}
+
+		public int getBitDepth() {
+			return bytesPerSample * 8;
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final Encoding encoding;
+	/**
+	 * Number of interleaved channels per frame.
+	 */
+	private final int channels;
+	private final int frameSize;
+	private final ShortBuffer shortView;
+	private int frameCount;
+
+	/**
+	 * Creates a view on the given buffer. The buffer content is not copied,
+	 * changes of the buffer are visible through the view.
+	 * @param buffer - Buffer containing the samples, beginning at index 0.
+	 * @param encoding - Encoding of the samples.
+	 * @param channels - Number of interleaved channels.
+	 */
+	public SampleBuffer(ByteBuffer buffer, Encoding encoding, int channels) {
+		if(channels <= 0) {
+			throw new IllegalArgumentException("A sample buffer needs at least one channel");
+		}
+		this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.buffer.clear();
+		this.encoding = encoding;
+		this.channels = channels;
+		this.frameSize = encoding.getBytesPerSample() * channels;
+		this.shortView = encoding == Encoding.PCM_SIGNED_16 ? this.buffer.asShortBuffer() : null;
+		this.frameCount = buffer.limit() / frameSize;
+	}
+
+	/**
+	 * Sets the number of valid frames in the buffer.
+	 * @param frameCount - Number of frames.
+	 */
+	public void setFrameCount(int frameCount) {
+		if(frameCount < 0 || (long) frameCount * frameSize > buffer.capacity()) {
+			throw new IllegalArgumentException("Buffer can not hold " + frameCount + " frames");
+		}
+		this.frameCount = frameCount;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * @return View on the valid samples of a 16 bit buffer.
+	 */
+	public ShortBuffer asShortBuffer() {
+		if(encoding != Encoding.PCM_SIGNED_16) {
+			throw new UnsupportedOperationException("Buffer does not contain 16 bit samples");
+		}
+		ShortBuffer view = shortView.duplicate();
+		view.limit(frameCount * channels);
+		return view;
+	}
+
+	/**
+	 * @return View on the valid samples of a 32 bit floating point buffer.
+	 */
+	public FloatBuffer asFloatBuffer() {
+		if(encoding != Encoding.FLOAT_32) {
+			throw new UnsupportedOperationException("Buffer does not contain 32 bit floating point samples");
+		}
+		ByteBuffer bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		bytes.limit(frameCount * frameSize);
+		return bytes.asFloatBuffer();
+	}
+
+	/**
+	 * Copies the samples of one channel as 16 bit values into the target array.
+	 * @param frame - Index of the first frame.
+	 * @param channel - Index of the channel inside of the frame.
+	 * @param target - Array the samples are copied to.
+	 * @param offset - Index in the target array.
+	 * @param count - Maximum number of frames.
+	 * @return Number of copied samples.
+	 */
+	public int read(int frame, int channel, short[] target, int offset, int count) {
+		count = Math.max(0, Math.min(count, frameCount - frame));
+		if(channels == 1 && shortView != null) {
+			//Fast path for the most common format
+			ShortBuffer view = shortView.duplicate();
+			view.position(frame);
+			view.get(target, offset, count);
+			return count;
+		}
+		int byteIndex = frame * frameSize + channel * encoding.getBytesPerSample();
+		for (int i = 0; i < count; i++) {
+			target[offset + i] = (short) get16BitValue(byteIndex);
+			byteIndex += frameSize;
+		}
+		return count;
+	}
+
+	/**
+	 * Copies the samples of one channel as values between -1 and 1 into the target array.
+	 * @param frame - Index of the first frame.
+	 * @param channel - Index of the channel inside of the frame.
+	 * @param target - Array the samples are copied to.
+	 * @param offset - Index in the target array.
+	 * @param count - Maximum number of frames.
+	 * @return Number of copied samples.
+	 */
+	public int read(int frame, int channel, float[] target, int offset, int count) {
+		count = Math.max(0, Math.min(count, frameCount - frame));
+		int byteIndex = frame * frameSize + channel * encoding.getBytesPerSample();
+		for (int i = 0; i < count; i++) {
+			target[offset + i] = getNormalizedValue(byteIndex);
+			byteIndex += frameSize;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a sample and scales it to the 16 bit range.
+	 * @param byteIndex - Index of the first byte of the sample.
+	 * @return Sample value.
+	 */
+	private int get16BitValue(int byteIndex) {
+		switch (encoding) {
+		case PCM_UNSIGNED_8:
+			return ((buffer.get(byteIndex) & 0xFF) - 128) << 8;
+		case PCM_SIGNED_16:
+			return buffer.getShort(byteIndex);
+		case PCM_SIGNED_24:
+			//The lowest byte is dropped, the sign is kept by the highest byte
+			return (buffer.get(byteIndex + 2) << 8) | (buffer.get(byteIndex + 1) & 0xFF);
+		case PCM_SIGNED_32:
+			return buffer.getInt(byteIndex) >> 16;
+		case FLOAT_32:
+			return toShortRange(buffer.getFloat(byteIndex));
+		case FLOAT_64:
+			return toShortRange((float) buffer.getDouble(byteIndex));
+		default:
+			throw new IllegalStateException("Unknown encoding " + encoding);
+		}
+	}
+
+	/**
+	 * Reads a sample and scales it to values between -1 and 1.
+	 * @param byteIndex - Index of the first byte of the sample.
+	 * @return Sample value.
+	 */
+	private float getNormalizedValue(int byteIndex) {
+		switch (encoding) {
+		case PCM_UNSIGNED_8:
+			return ((buffer.get(byteIndex) & 0xFF) - 128) / 128f;
+		case PCM_SIGNED_16:
+			return buffer.getShort(byteIndex) / 32768f;
+		case PCM_SIGNED_24:
+			int value = (buffer.get(byteIndex + 2) << 16)
+					| ((buffer.get(byteIndex + 1) & 0xFF) << 8)
+					| (buffer.get(byteIndex) & 0xFF);
+			return value / 8388608f;
+		case PCM_SIGNED_32:
+			return buffer.getInt(byteIndex) / 2147483648f;
+		case FLOAT_32:
+			return buffer.getFloat(byteIndex);
+		case FLOAT_64:
+			return (float) buffer.getDouble(byteIndex);
+		default:
+			throw new IllegalStateException("Unknown encoding " + encoding);
+		}
+	}
+
+	/**
+	 * Scales a floating point sample like a 16 bit sample is normalized, so
+	 * -1 is mapped to -32768 and negative full scale counts as clipped.
+	 */
+	private static int toShortRange(float value) {
+		int scaled = Math.round(value * (value < 0 ? -Short.MIN_VALUE : Short.MAX_VALUE));
+		return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+	}
+}
@@ -0,0 +1,85 @@
+package lanr.logic.model;
+
+import java.io.IOException;
+
+/**
+ * @author Nicolas Bruch
+ * 
+ *         Storage for the decoded 16 bit samples of an {@link AudioChannel}.
+ *         Samples are appended by a single writer and can be read by any
+ *         thread up to the current size.
+ *
+ */
+public interface SampleStore {
+
+	/**
+	 * Number of bytes a channel may keep on the heap. Larger channels are
+	 * stored on the disk, so the heap usage does not depend on the length of
+	 * the recordings. Can be set with the system property
+	 * <i>lanr.heapStoreLimit</i>.
+	 */
+	long HEAP_STORE_LIMIT = Long.getLong("lanr.heapStoreLimit", 1L << 20);
+	
+	/**
+	 * Appends samples to the end of the store.
+	 * @param samples - Array containing the samples.
+	 * @param offset - Index of the first sample in the array.
+	 * @param length - Number of samples.
+	 */
+	void append(short[] samples, int offset, int length);
+	
+	/**
+	 * Overwrites samples inside of the store. Different threads can write
+	 * to separate ranges of the store at the same time.
+	 * @param position - Index of the first sample in the store.
+	 * @param samples - Array containing the samples.
+	 * @param offset - Index of the first sample in the array.
+	 * @param length - Number of samples.
+	 */
+	void write(long position, short[] samples, int offset, int length);
+	
+	/**
+	 * Changes the number of samples in the store. The storage for all
+	 * samples is allocated, so they can be written by {@link #write}.
+	 * Added samples are silent.
+	 * @param size - New number of samples.
+	 */
+	void resize(long size);
+	
+	/**
+	 * Copies samples from the store into the given array.
+	 * @param position - Index of the first sample in the store.
+	 * @param target - Array the samples are copied to.
+	 * @param offset - Index in the target array.
+	 * @param length - Maximum number of samples.
+	 * @return Number of samples copied, which is less than the given
+	 * length if the end of the store is reached.
+	 */
+	int read(long position, short[] target, int offset, int length);
+	
+	/**
+	 * @return Number of samples in the store.
+	 */
+	long size();
+	
+	/**
+	 * Releases all resources used by the store.
+	 */
+	void close();
+	
+	/**
+	 * Creates a store for the expected number of samples. Only short
+	 * channels fitting into {@link #HEAP_STORE_LIMIT} are kept on the heap,
+	 * all others and channels of unknown length are stored in a memory
+	 * mapped temporary file.
+	 * @param expectedSamples - Number of samples the store is expected to hold, 0 if unknown.
+	 * @return Store for the samples.
+	 * @throws IOException
+	 */
+	static SampleStore create(long expectedSamples) throws IOException {
+		if(expectedSamples <= 0 || expectedSamples > HEAP_STORE_LIMIT / Short.BYTES) {
+			return new MappedSampleStore();
+		}
+		return new HeapSampleStore();
+	}
+}
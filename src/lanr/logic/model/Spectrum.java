@@ -0,0 +1,88 @@
+package lanr.logic.model;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Magnitude spectrum of a single windowed frame of an
+ *         {@link AudioChannel}. A full scale sinusoid has a magnitude of one
+ *         in its bin.<br>
+ *         Spectra are reused by the feature engine once they dropped out of
+ *         its history, so a spectrum must not be kept beyond that.
+ *
+ */
+public class Spectrum {
+
+	private final float[] magnitudes;
+	private final int sampleRate;
+	private final int frameSize;
+	/**
+	 * Wavelet coefficients of the frame or null if they are not calculated.
+	 */
+	private double[] waveletCoefficients;
+	/**
+	 * Index of the first sample of the frame inside of the channel.
+	 */
+	private long position;
+
+	/**
+	 * @param frameSize - Number of samples of the transformed frame.
+	 * @param sampleRate - Sample rate of the channel.
+	 */
+	public Spectrum(int frameSize, int sampleRate) {
+		this.frameSize = frameSize;
+		this.sampleRate = sampleRate;
+		this.magnitudes = new float[frameSize / 2 + 1];
+	}
+
+	/**
+	 * @return Magnitudes of the bins from 0 Hz to the nyquist frequency.
+	 */
+	public float[] getMagnitudes() {
+		return magnitudes;
+	}
+
+	public int getBinCount() {
+		return magnitudes.length;
+	}
+
+	/**
+	 * @param bin - Index of the bin.
+	 * @return Center frequency of the bin in Hz.
+	 */
+	public double getFrequency(int bin) {
+		return (double) bin * sampleRate / frameSize;
+	}
+
+	/**
+	 * @param frequency - Frequency in Hz.
+	 * @return Index of the bin containing the frequency.
+	 */
+	public int getBin(double frequency) {
+		int bin = (int) Math.round(frequency * frameSize / sampleRate);
+		return Math.max(0, Math.min(magnitudes.length - 1, bin));
+	}
+
+	public double[] getWaveletCoefficients() {
+		return waveletCoefficients;
+	}
+
+	public void setWaveletCoefficients(double[] waveletCoefficients) {
+		this.waveletCoefficients = waveletCoefficients;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public void setPosition(long position) {
+		this.position = position;
+	}
+
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+}
@@ -0,0 +1,166 @@
+package lanr.model;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Runs the jobs of the model in two separate lanes. Short interactive
+ *         jobs, like reading the meta data of a file, never have to wait for
+ *         the long running batch jobs. Batch jobs are taken from a shared
+ *         priority queue by all batch threads, longest job first, which keeps
+ *         the total time of a large batch short.<br>
+ *         Runtime exceptions thrown by a job are reported to the listeners
+ *         with the {@link #ERROR_PROPERTY}.
+ *
+ */
+public class JobScheduler extends Model {
+
+	public static final String ERROR_PROPERTY = "error";
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final ThreadPoolExecutor interactiveLane;
+	private final ThreadPoolExecutor batchLane;
+	/**
+	 * Keeps jobs with the same duration in the order of their submission.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+	/**
+	 * Number of batch and interactive jobs currently running.
+	 */
+	private final AtomicInteger runningJobs = new AtomicInteger();
+
+	/**
+	 * Creates a scheduler using all available processors for batch jobs.
+	 */
+	public JobScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param batchThreads - Number of threads running batch jobs in parallel.
+	 */
+	public JobScheduler(int batchThreads) {
+		if(batchThreads <= 0) {
+			throw new IllegalArgumentException("The scheduler needs at least one batch thread");
+		}
+		int interactiveThreads = Math.max(1, Math.min(2, batchThreads / 2));
+		interactiveLane = new ThreadPoolExecutor(
+				interactiveThreads, interactiveThreads,
+				KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				createThreadFactory("LANR-Interactive-"));
+		interactiveLane.allowCoreThreadTimeOut(true);
+		batchLane = new ThreadPoolExecutor(
+				batchThreads, batchThreads,
+				KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(),
+				createThreadFactory("LANR-Batch-"));
+		/*
+		 * The executor hands a job directly to a new thread while there are less
+		 * threads than its core size. All batch threads are started and kept, so
+		 * every job is queued and compared to the other jobs.
+		 */
+		batchLane.prestartAllCoreThreads();
+	}
+
+	/**
+	 * Runs a short job which should be executed as soon as possible.
+	 * @param job - Job to be executed.
+	 */
+	public void submitInteractive(Runnable job) {
+		interactiveLane.execute(() -> runReported(job));
+	}
+
+	/**
+	 * Queues a long running job. Jobs with a longer duration are started first.
+	 * @param job - Job to be executed.
+	 * @param duration - Estimated duration of the job, for example the length of the audio.
+	 */
+	public void submitBatch(Runnable job, long duration) {
+		batchLane.execute(new BatchJob(job, duration, sequence.getAndIncrement()));
+	}
+
+	/**
+	 * @return Number of batch jobs waiting to be started.
+	 */
+	public int getQueuedBatchJobs() {
+		return batchLane.getQueue().size();
+	}
+
+	/**
+	 * @return Number of batch threads which are neither running a batch job
+	 * nor needed by a running interactive job.
+	 */
+	public int getIdleBatchThreads() {
+		return Math.max(0, batchLane.getMaximumPoolSize() - runningJobs.get());
+	}
+
+	/**
+	 * Stops accepting new jobs. Already submitted jobs are still executed.
+	 */
+	public void shutdown() {
+		interactiveLane.shutdown();
+		batchLane.shutdown();
+	}
+
+	/**
+	 * Runs a job and reports its runtime exceptions to the listeners.
+	 */
+	private void runReported(Runnable job) {
+		runningJobs.incrementAndGet();
+		try {
+			job.run();
+		} catch (RuntimeException e) {
+			state.firePropertyChange(ERROR_PROPERTY, null, e);
+		} finally {
+			runningJobs.decrementAndGet();
+		}
+	}
+
+	private static ThreadFactory createThreadFactory(String prefix) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Batch job ordered by its duration, longest first.
+	 */
+	private class BatchJob implements Runnable, Comparable<BatchJob> {
+
+		private final Runnable job;
+		private final long duration;
+		private final long sequence;
+
+		BatchJob(Runnable job, long duration, long sequence) {
+			this.job = job;
+			this.duration = duration;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			runReported(job);
+		}
+
+		@Override
+		public int compareTo(BatchJob other) {
+			int result = Long.compare(other.duration, duration);
+			if(result == 0) {
+				result = Long.compare(sequence, other.sequence);
+			}
+			return result;
+		}
+	}
+}
@@ -3,13 +3,15 @@ package lanr.model;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import lanr.logic.AudioAnalyzer;
+import lanr.logic.AnalysisPipeline;
+import lanr.logic.CoarseToFineSearch;
+import lanr.logic.DetectorRunner;
 import lanr.logic.FileReader;
+import lanr.logic.ParallelSearch;
+import lanr.logic.PcmCache;
 import lanr.logic.model.AudioData;
 import lanr.logic.model.LANRException;
 import lanr.logic.model.LANRFileException;
@@ -18,7 +20,11 @@ public class MainModel extends Model {
 
 	private static MainModel instance;
 	
-	private MainModel() {};
+	private MainModel() {
+		//Failures the jobs do not handle themselves are reported like the other errors
+		scheduler.addChangeListener(evt -> state.firePropertyChange(ERROR_PROPERTY, null,
+				new LANRException((Throwable) evt.getNewValue())));
+	};
 	
 	public static MainModel instance() {
 		if(instance == null) {
@@ -32,14 +38,32 @@ public class MainModel extends Model {
 	public static final String AUDIO_REMOVED_PROPERTY = "removeAudio";
 	public static final String PROGRESS_UPDATE_PROPERTY = "progressUpdate";
 	public static final String ERROR_PROPERTY = "error";
+	
+	/**
+	 * Length in seconds from which on a recording is decoded in parallel segments.
+	 */
+	private static final long SEGMENTED_DECODING_LENGTH = 600;
 
-	private ExecutorService executors = Executors.newFixedThreadPool(10);
+	private final JobScheduler scheduler = new JobScheduler();
+	private final PcmCache pcmCache = new PcmCache();
+	private final ParallelSearch parallelSearch = new ParallelSearch();
+	private final CoarseToFineSearch coarseSearch = new CoarseToFineSearch();
+	/**
+	 * True if stored samples are only searched at the candidates of a coarse pass.
+	 */
+	private volatile boolean coarseAnalysis = false;
 
-	private List<AudioData> audioData = new ArrayList<AudioData>();
-	private AudioAnalyzer analyzer = new AudioAnalyzer();
+	private List<AudioData> audioData = new CopyOnWriteArrayList<AudioData>();
 
+	/**
+	 * Starts the analysis of all audio data which has not been analyzed yet.
+	 */
 	public void analyze() {
-		analyzer.anazlyze();
+		for(AudioData data : audioData) {
+			if(!data.isAnalyzed()) {
+				analyzeAudio(data);
+			}
+		}
 	}
 
 	/**
@@ -53,6 +77,8 @@ public class MainModel extends Model {
 			try {
 				AudioData data = FileReader.getFile(path, getFileEventHandler());
 				if (data != null) {
+					//The waveform of a file analyzed before is shown without decoding it
+					pcmCache.loadPeaks(data);
 					audioData.add(data);
 					state.firePropertyChange(AUDIO_ADDED_PROPERTY, null, data);
 				}
@@ -60,27 +86,77 @@ public class MainModel extends Model {
 				state.firePropertyChange(ERROR_PROPERTY, null, new LANRException(e));
 			}
 		};
-		executors.execute(algorithmRunnable);
+		scheduler.submitInteractive(algorithmRunnable);
 	}
 	
 	/**
 	 * Starts the decoding and analyzing of the given audio data in a separate thread.
+	 * Longer recordings are started before shorter ones.
 	 * @param data - Data to be decoded and analyzed.
 	 */
 	public void analyzeAudio(AudioData data) {
 		FileReader.interrupted = false;
 		Runnable algorithmRunnable = () -> {
 			try {
-				FileReader.readFile(data, getFileEventHandler());
+				//Uncompressed wave files are mapped directly, caching them would only copy them
+				boolean waveFile = FileReader.isWaveFile(data);
+				boolean cached = !waveFile && pcmCache.load(data);
+				AnalysisPipeline pipeline = new AnalysisPipeline(data);
+				if(!waveFile && !cached) {
+					//The noises are searched while the samples are streamed through the pipeline
+					pipeline.addConsumer(DetectorRunner::new);
+				}
+				pipeline.start();
+				if(waveFile) {
+					FileReader.readFile(data, getFileEventHandler(), pipeline);
+				} else if(cached) {
+					FileReader.replayFile(data, getFileEventHandler(), pipeline);
+				} else {
+					//A single long recording is split up, so the cores left idle by the other jobs decode it as well
+					int segmentCount = 1 + scheduler.getIdleBatchThreads();
+					if(data.getLength() >= SEGMENTED_DECODING_LENGTH && scheduler.getQueuedBatchJobs() == 0 && segmentCount > 1) {
+						FileReader.readFileSegmented(data, getFileEventHandler(), pipeline, segmentCount);
+					} else {
+						FileReader.readFile(data, getFileEventHandler(), pipeline);
+					}
+					if(!FileReader.interrupted) {
+						pcmCache.save(data);
+						pcmCache.savePeaks(data);
+					}
+					return;
+				}
+				if(!FileReader.interrupted) {
+					pcmCache.savePeaks(data);
+					//All samples are already available, so they are searched on all cores at once
+					if(coarseAnalysis) {
+						coarseSearch.search(data);
+					} else {
+						parallelSearch.search(data);
+					}
+				}
 			} catch (InterruptedException | IOException e) {
 				state.firePropertyChange(ERROR_PROPERTY, null, new LANRException(e));
 			}
 		};
-		executors.execute(algorithmRunnable);
+		scheduler.submitBatch(algorithmRunnable, data.getLength());
+	}
+
+	public boolean isCoarseAnalysis() {
+		return coarseAnalysis;
+	}
+
+	/**
+	 * @param coarseAnalysis - True if recordings whose samples are already
+	 *            available should only be searched where a cheap coarse pass
+	 *            found candidates for noises.
+	 */
+	public void setCoarseAnalysis(boolean coarseAnalysis) {
+		this.coarseAnalysis = coarseAnalysis;
 	}
 
 	public void removeAudioData(AudioData data) {
 		audioData.remove(data);
+		data.releaseSamples();
 		state.firePropertyChange(AUDIO_REMOVED_PROPERTY, null, data);
 	}
 
@@ -115,7 +191,7 @@ public class MainModel extends Model {
 	 */
 	public void shutdown() {
 		FileReader.interrupted = true;
-		executors.shutdown();
+		scheduler.shutdown();
 	}
 
 }
@@ -2,7 +2,6 @@ package lanr.view;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.time.LocalTime;
 
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
@@ -10,7 +9,7 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.control.Button;
-import javafx.scene.control.ScrollPane;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TitledPane;
@@ -33,7 +32,7 @@ public class AudioDataContainer extends TitledPane {
 	private VBox content;
 	private Button analyzeButton;
 	private Text placeHolderText;
-	private ScrollPane visualisationContainer;
+	private VBox visualisationContainer;
 	
 	public AudioDataContainer(AudioData data, AudioController controller) {
 		this.controller = controller;
@@ -160,11 +159,20 @@ public class AudioDataContainer extends TitledPane {
 		return listener;
 	}
 
-	private ScrollPane createAudioVisual() {
-		ScrollPane pane = new ScrollPane();
-		AudioVisualisation canvasContainer = new AudioVisualisation(600, 200, data);
-		pane.setContent(canvasContainer);
-		return pane;
+	/**
+	 * Creates the visualisation of the channels and the switch for their spectrograms.
+	 * @return
+	 */
+	private VBox createAudioVisual() {
+		//The visualisation only draws the visible part, so it does not need a scroll pane
+		AudioVisualisation visualisation = new AudioVisualisation(600, 200, data);
+		CheckBox spectrogramBox = new CheckBox("Show spectrogram");
+		spectrogramBox.setOnAction(event -> {
+			visualisation.setSpectrogramVisible(spectrogramBox.isSelected());
+			//Make room for the spectrograms
+			visualisation.setPrefHeight(spectrogramBox.isSelected() ? 400 : 200);
+		});
+		return new VBox(spectrogramBox, visualisation);
 	}
 
 	private TableView<Noise> createNoiseTable() {
@@ -213,9 +221,9 @@ public class AudioDataContainer extends TitledPane {
 	}
 	
 	private String getDurationString(long durationInSeconds) {
-		LocalTime timeOfDay = LocalTime.ofSecondOfDay(durationInSeconds);
-		String time = timeOfDay.toString();
-		return time;
+		//Recordings can be longer than a day, so the hours are not wrapped
+		return String.format("%02d:%02d:%02d", durationInSeconds / 3600, durationInSeconds / 60 % 60,
+				durationInSeconds % 60);
 	}
 
 }
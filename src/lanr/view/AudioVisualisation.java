@@ -1,34 +1,280 @@
 package lanr.view;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import javafx.scene.layout.VBox;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
 import javafx.scene.paint.Color;
 import lanr.logic.model.AudioChannel;
 import lanr.logic.model.AudioData;
 
-public class AudioVisualisation extends VBox {
-	
+/**
+ * @author Nicolas Bruch
+ *
+ *         Shows the waveforms of all channels of an audio file in a viewport
+ *         which can be zoomed from the whole recording down to single samples.
+ *         At zoom level z a pixel column covers 2<sup>z</sup> samples, only
+ *         the columns inside of the viewport are drawn.<br>
+ *         The columns are taken from {@link WaveformTile}s, which are created
+ *         in the background from the peaks of the channels and kept in a
+ *         {@link TileCache}. Changes of the viewport, new tiles and decoded
+ *         samples only mark the view as changed, an {@link AnimationTimer}
+ *         draws it at most once per frame.<br>
+ *         A {@link SpectrogramVisualisation} can be shown below the waveform
+ *         of every channel, its tiles are kept in a separate cache.<br>
+ *         The mouse wheel scrolls the viewport, together with the control key
+ *         it zooms around the position of the mouse.
+ *
+ */
+public class AudioVisualisation extends Region {
+
 	private static final String CSS_ID = "visualisationBackGround";
-	
+	/**
+	 * Maximum number of cached tiles of all channels.
+	 */
+	private static final int TILE_CAPACITY = 1024;
+	/**
+	 * Maximum number of cached spectrogram tiles of all channels, a tile takes 128 KB.
+	 */
+	private static final int SPECTROGRAM_TILE_CAPACITY = 256;
+
+	private final AudioData data;
 	/**
 	 * Contains the channel index and its canvas + graphics context
 	 */
-	private List<ChannelVisualisation> channelVisuals = new LinkedList<ChannelVisualisation>();
+	private List<ChannelVisualisation> channelVisuals = new ArrayList<ChannelVisualisation>();
+	private List<SpectrogramVisualisation> spectrogramVisuals = new ArrayList<SpectrogramVisualisation>();
+	private final ScrollBar scrollBar = new ScrollBar();
+	private final TileCache<WaveformTile> tiles = new TileCache<WaveformTile>(TILE_CAPACITY, WaveformTile::create,
+			this::invalidate);
+	private final TileCache<SpectrogramTile> spectrogramTiles = new TileCache<SpectrogramTile>(
+			SPECTROGRAM_TILE_CAPACITY, SpectrogramTile::create, this::invalidate);
+	private boolean spectrogramVisible = false;
+	/**
+	 * Current zoom level, Integer.MAX_VALUE until the viewport has a width.
+	 */
+	private int zoom = Integer.MAX_VALUE;
+	/**
+	 * Column at the left edge of the viewport.
+	 */
+	private double firstColumn = 0;
+	private final AtomicBoolean changed = new AtomicBoolean(false);
+	private final AtomicBoolean rendering = new AtomicBoolean(false);
+	private final AnimationTimer renderer = new AnimationTimer() {
 
+		@Override
+		public void handle(long now) {
+			render();
+		}
+	};
 
-	public AudioVisualisation(double width, double height, AudioData data) {	
-		this.setId(CSS_ID);	
-		//The canvas are created in advance and drawn to when analyzing
+	public AudioVisualisation(double width, double height, AudioData data) {
+		this.data = data;
+		this.setId(CSS_ID);
+		this.setPrefSize(width, height);
 		for (AudioChannel channel : data.getAllChannel()) {
 			channelVisuals.add(new ChannelVisualisation(
 					width,
 					height / data.getAllChannel().size(),
-					channel));
+					channel,
+					tiles));
+			SpectrogramVisualisation spectrogramVisual = new SpectrogramVisualisation(
+					width,
+					height / data.getAllChannel().size(),
+					channel,
+					spectrogramTiles);
+			spectrogramVisual.setVisible(false);
+			spectrogramVisuals.add(spectrogramVisual);
+			//Decoded samples never wait for the application thread
+			channel.addChangeListener(evt -> invalidate());
+		}
+		this.getChildren().addAll(channelVisuals);
+		this.getChildren().addAll(spectrogramVisuals);
+		scrollBar.setOrientation(Orientation.HORIZONTAL);
+		scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+			firstColumn = newValue.doubleValue();
+			invalidate();
+		});
+		this.getChildren().add(scrollBar);
+		this.setOnScroll(this::handleScroll);
+		//Nothing is drawn while the view is not shown
+		this.sceneProperty().addListener((observable, oldScene, newScene) -> invalidate());
+	}
+
+	@Override
+	protected void layoutChildren() {
+		double width = getWidth();
+		double height = getHeight();
+		double barHeight = scrollBar.prefHeight(width);
+		double channelHeight = Math.max(0, height - barHeight) / Math.max(1, channelVisuals.size());
+		//The spectrogram takes the lower half of the space of its channel
+		double waveformHeight = spectrogramVisible ? channelHeight / 2 : channelHeight;
+		for (int i = 0; i < channelVisuals.size(); i++) {
+			ChannelVisualisation channelVisual = channelVisuals.get(i);
+			channelVisual.setWidth(width);
+			channelVisual.setHeight(waveformHeight);
+			channelVisual.relocate(0, i * channelHeight);
+			SpectrogramVisualisation spectrogramVisual = spectrogramVisuals.get(i);
+			spectrogramVisual.setWidth(width);
+			spectrogramVisual.setHeight(channelHeight - waveformHeight);
+			spectrogramVisual.relocate(0, i * channelHeight + waveformHeight);
+		}
+		scrollBar.resizeRelocate(0, height - barHeight, width, barHeight);
+		if(zoom == Integer.MAX_VALUE && width > 0) {
+			zoom = getFittingZoom();
+		}
+		updateScrollBar();
+		invalidate();
+	}
+
+	/**
+	 * Changes the zoom level. The sample at the given position of the
+	 * viewport stays at its place.
+	 * @param level - New zoom level, limited to the zoom levels between
+	 *            single samples and the whole recording.
+	 * @param x - Position inside of the viewport.
+	 */
+	public void setZoom(int level, double x) {
+		level = Math.max(WaveformTile.MIN_ZOOM, Math.min(getFittingZoom(), level));
+		if(level == zoom || zoom == Integer.MAX_VALUE) {
+			return;
+		}
+		double sample = Math.scalb(firstColumn + x, zoom);
+		zoom = level;
+		updateScrollBar();
+		scrollTo(Math.scalb(sample, -zoom) - x);
+	}
+
+	public int getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Shows or hides the spectrograms of the channels.
+	 * @param spectrogramVisible - True if the spectrograms should be shown.
+	 */
+	public void setSpectrogramVisible(boolean spectrogramVisible) {
+		this.spectrogramVisible = spectrogramVisible;
+		for (SpectrogramVisualisation spectrogramVisual : spectrogramVisuals) {
+			spectrogramVisual.setVisible(spectrogramVisible);
+		}
+		requestLayout();
+	}
+
+	public boolean isSpectrogramVisible() {
+		return spectrogramVisible;
+	}
+
+	/**
+	 * Moves the viewport.
+	 * @param column - Column at the left edge of the viewport.
+	 */
+	public void scrollTo(double column) {
+		column = Math.max(scrollBar.getMin(), Math.min(scrollBar.getMax(), column));
+		firstColumn = column;
+		scrollBar.setValue(column);
+		invalidate();
+	}
+
+	private void handleScroll(ScrollEvent event) {
+		if(event.isControlDown() || event.isShortcutDown()) {
+			if(event.getDeltaY() != 0) {
+				setZoom(event.getDeltaY() > 0 ? zoom - 1 : zoom + 1, event.getX());
+			}
+		} else {
+			double delta = event.getDeltaX() != 0 ? event.getDeltaX() : event.getDeltaY();
+			scrollTo(firstColumn - delta);
+		}
+		event.consume();
+	}
+
+	/**
+	 * @return Smallest zoom level showing all samples inside of the viewport.
+	 */
+	private int getFittingZoom() {
+		long frameCount = getFrameCount();
+		double width = Math.max(1, getWidth());
+		int level = WaveformTile.MIN_ZOOM;
+		while (ChannelVisualisation.getColumnCount(frameCount, level) > width) {
+			level++;
+		}
+		return level;
+	}
+
+	private long getFrameCount() {
+		long frameCount = 1;
+		for (AudioChannel channel : data.getAllChannel()) {
+			frameCount = Math.max(frameCount, channel.getFrameCount());
+		}
+		return frameCount;
+	}
+
+	private void updateScrollBar() {
+		if(zoom == Integer.MAX_VALUE) {
+			return;
+		}
+		double width = getWidth();
+		double columns = ChannelVisualisation.getColumnCount(getFrameCount(), zoom);
+		scrollBar.setMax(Math.max(0, columns - width));
+		scrollBar.setVisibleAmount(width);
+		scrollBar.setBlockIncrement(width);
+		scrollBar.setUnitIncrement(Math.max(1, width / 10));
+		firstColumn = Math.min(firstColumn, scrollBar.getMax());
+	}
+
+	/**
+	 * Marks the view as changed, so it is drawn with the next frame.
+	 * Can be called by any thread.
+	 */
+	private void invalidate() {
+		changed.set(true);
+		if(rendering.compareAndSet(false, true)) {
+			if(Platform.isFxApplicationThread()) {
+				renderer.start();
+			} else {
+				Platform.runLater(renderer::start);
+			}
+		}
+	}
+
+	/**
+	 * Draws the view if it changed since the last frame, otherwise the renderer is stopped.
+	 */
+	private void render() {
+		if(!changed.getAndSet(false)) {
+			renderer.stop();
+			rendering.set(false);
+			//Changes before the flag was cleared did not start the renderer
+			if(changed.get() && rendering.compareAndSet(false, true)) {
+				renderer.start();
+			}
+			return;
 		}
+		if(zoom == Integer.MAX_VALUE || getScene() == null) {
+			return;
+		}
+		//The number of samples is only estimated until the channels are decoded
+		updateScrollBar();
+		List<TileKey> needed = new ArrayList<TileKey>();
+		for (ChannelVisualisation channelVisual : channelVisuals) {
+			channelVisual.draw(zoom, firstColumn, needed);
+		}
+		tiles.retain(needed);
+		needed.clear();
+		if(spectrogramVisible) {
+			for (SpectrogramVisualisation spectrogramVisual : spectrogramVisuals) {
+				spectrogramVisual.draw(zoom, firstColumn, needed);
+			}
+		}
+		spectrogramTiles.retain(needed);
 	}
-	
+
 	private Color getSeverityColor(double severity) {
 		if(severity < 0.3 && severity > 0.001) {
 			return Color.GREEN;
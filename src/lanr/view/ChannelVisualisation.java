@@ -1,73 +1,152 @@
 package lanr.view;
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
+import java.util.Collection;
 
 import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import lanr.logic.model.AudioChannel;
 
 /**
  * @author Nicolas Bruch
- * 
- *         Contains methods for the visual representation of an audio channel
+ *
+ *         Contains methods for the visual representation of an audio channel.
+ *         Only the columns visible in the {@link AudioVisualisation} are drawn,
+ *         taken from {@link WaveformTile}s of the current zoom level. Every
+ *         column is a single line from the smallest to the largest sample it
+ *         covers, single samples are connected by a line.<br>
+ *         Missing tiles are requested from the {@link TileCache}, cached tiles
+ *         of coarser zoom levels are stretched over their place until they
+ *         are available.
  *
  */
 public class ChannelVisualisation extends Canvas {
 
-	private final double width;
-	private final double height;
+	/**
+	 * Range of the 16 bit samples plus a small buffer.
+	 */
+	private static final double MAX_SAMPLE_VALUE = (1 << 16) + 10;
+	/**
+	 * Number of coarser zoom levels searched for a replacement of a missing tile.
+	 */
+	private static final int FALLBACK_LEVELS = 6;
+
 	private final AudioChannel channel;
-	private final long sampleCount;
-	private final double sampleDistance;
-	private final double maxSampleValue;
-	private final double heightValue;
+	private final TileCache<WaveformTile> tiles;
 	private final double halfValue;
-	private double currentXPosition = 0;
-	private double lastYPosition = 0;
+	private double heightValue;
+	/*
+	 * Last point of the line connecting single samples
+	 */
+	private double lastX;
+	private double lastY;
 
-	public ChannelVisualisation(double width, double height, AudioChannel channel) {
+	/**
+	 * @param width - Initial width of the canvas.
+	 * @param height - Initial height of the canvas.
+	 * @param channel - Channel which is drawn.
+	 * @param tiles - Cache containing the tiles of the channel.
+	 */
+	ChannelVisualisation(double width, double height, AudioChannel channel, TileCache<WaveformTile> tiles) {
+		super(width, height);
 		this.channel = channel;
-		this.width = width;
-		this.height = height;
+		this.tiles = tiles;
 		this.getGraphicsContext2D().setStroke(Color.BLUE);
-		this.getGraphicsContext2D().setLineWidth(0.1);
-		channel.addChangeListener(createChangeListener());
-		this.sampleCount = channel.getLength() * channel.getSampleRate();
-		this.sampleDistance = this.width / sampleCount;
-		this.maxSampleValue = Math.pow(2, channel.getBitDepth()) + 10; // added 10 for buffer
-		this.heightValue = this.height / maxSampleValue;
-		this.halfValue = maxSampleValue / 2;
+		this.getGraphicsContext2D().setLineWidth(1);
+		this.halfValue = MAX_SAMPLE_VALUE / 2;
 	}
 
-	private void drawAudioData(short[] data) {
-		double sampleYPosition;
-		for (short sample : data) {
-			double newXPosition = currentXPosition + sampleDistance;
-			/*
-			 * Half width is added to convert from negative to positive. The height value
-			 * multiplier is needed to convert the sample value into the height space of the
-			 * canvas.
-			 */
-			sampleYPosition = (sample + halfValue) * heightValue;
-			this.getGraphicsContext2D().strokeLine(currentXPosition, lastYPosition, newXPosition, sampleYPosition);
-			// update last point
-			lastYPosition = sampleYPosition;
-			currentXPosition = newXPosition;
+	/**
+	 * Draws the visible columns. Has to be called on the application thread.
+	 * @param zoom - Zoom level, a column covers 2<sup>zoom</sup> samples.
+	 * @param firstColumn - Column at the left edge of the canvas.
+	 * @param needed - Receives the keys of the visible tiles.
+	 */
+	void draw(int zoom, double firstColumn, Collection<TileKey> needed) {
+		GraphicsContext context = this.getGraphicsContext2D();
+		double width = getWidth();
+		context.clearRect(0, 0, width, getHeight());
+		heightValue = getHeight() / MAX_SAMPLE_VALUE;
+		lastX = Double.NaN;
+		long start = Math.max(0, (long) Math.floor(firstColumn));
+		long end = Math.min(getColumnCount(channel.getFrameCount(), zoom), (long) Math.ceil(firstColumn + width));
+		for (long index = start / WaveformTile.COLUMNS; index * WaveformTile.COLUMNS < end; index++) {
+			TileKey key = new TileKey(channel, zoom, index);
+			needed.add(key);
+			WaveformTile tile = tiles.get(key);
+			if(tile == null || tile.isOutdated(channel)) {
+				tiles.request(key);
+			}
+			if(tile != null) {
+				drawTile(context, tile, zoom, index, firstColumn);
+			} else {
+				lastX = Double.NaN;
+				long tileStart = Math.max(start, index * WaveformTile.COLUMNS);
+				long tileEnd = Math.min(end, (index + 1) * WaveformTile.COLUMNS);
+				drawFallback(context, zoom, tileStart, tileEnd, firstColumn);
+			}
 		}
-		this.getGraphicsContext2D().stroke();
 	}
 
-	private PropertyChangeListener createChangeListener() {
-		PropertyChangeListener listener = new PropertyChangeListener() {
+	/**
+	 * @param frameCount - Number of samples.
+	 * @param zoom - Zoom level.
+	 * @return Number of columns needed for all samples at the zoom level.
+	 */
+	static long getColumnCount(long frameCount, int zoom) {
+		return zoom >= 0 ? (frameCount + (1L << zoom) - 1) >> zoom : frameCount << -zoom;
+	}
 
-			@Override
-			public void propertyChange(PropertyChangeEvent evt) {
-				short[] dataPacket = (short[]) evt.getNewValue();
-				drawAudioData(dataPacket);
+	private void drawTile(GraphicsContext context, WaveformTile tile, int zoom, long index, double firstColumn) {
+		long first = index * WaveformTile.COLUMNS;
+		if(zoom >= 0) {
+			for (int i = 0; i < tile.size(); i++) {
+				drawColumn(context, first + i - firstColumn + 0.5, tile.getMin(i), tile.getMax(i));
+			}
+			return;
+		}
+		//Every value is a single sample covering several columns
+		int columns = 1 << -zoom;
+		for (int i = 0; i < tile.size(); i++) {
+			double x = first + (i + 0.5) * columns - firstColumn;
+			double y = ((tile.getMin(i) + tile.getMax(i)) / 2.0 + halfValue) * heightValue;
+			if(tile.getMin(i) != tile.getMax(i)) {
+				//Only the peaks are known if the samples have been released
+				drawColumn(context, x, tile.getMin(i), tile.getMax(i));
+			}
+			if(!Double.isNaN(lastX)) {
+				context.strokeLine(lastX, lastY, x, y);
 			}
-		};
-		return listener;
+			lastX = x;
+			lastY = y;
+		}
+	}
+
+	/**
+	 * Draws columns of a missing tile from cached tiles of coarser zoom levels.
+	 */
+	private void drawFallback(GraphicsContext context, int zoom, long start, long end, double firstColumn) {
+		for (long column = start; column < end; column++) {
+			long sample = zoom >= 0 ? column << zoom : column >> -zoom;
+			for (int level = Math.max(0, zoom + 1); level <= zoom + FALLBACK_LEVELS; level++) {
+				long coarseColumn = sample >> level;
+				WaveformTile tile = tiles.get(new TileKey(channel, level, coarseColumn / WaveformTile.COLUMNS));
+				int i = (int) (coarseColumn % WaveformTile.COLUMNS);
+				if(tile != null && i < tile.size()) {
+					drawColumn(context, column - firstColumn + 0.5, tile.getMin(i), tile.getMax(i));
+					break;
+				}
+			}
+		}
+	}
+
+	private void drawColumn(GraphicsContext context, double x, short min, short max) {
+		/*
+		 * Half width is added to convert from negative to positive. The height value
+		 * multiplier is needed to convert the sample value into the height space of the
+		 * canvas.
+		 */
+		context.strokeLine(x, (min + halfValue) * heightValue, x, (max + halfValue) * heightValue);
 	}
 
 	public AudioChannel getAudioChannel() {
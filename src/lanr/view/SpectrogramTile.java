@@ -0,0 +1,186 @@
+package lanr.view;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import lanr.logic.FeatureEngine;
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.SampleStore;
+import lanr.logic.model.Spectrum;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Image of the spectra of the pixel columns of a {@link TileKey tile}.
+ *         Every column shows the spectrum of a single frame centred at the
+ *         first sample of the column. At negative zoom levels a sample covers
+ *         several columns, the image then has a column per sample and is
+ *         stretched when it is drawn.<br>
+ *         The rows are spaced logarithmically from {@link #MIN_FREQUENCY} to
+ *         the nyquist frequency, so hum at the lower end is not squeezed into
+ *         a few rows. Each pixel shows the largest magnitude of its bins in
+ *         decibel.<br>
+ *         Tiles are created on a background thread, the image is written
+ *         through its pixel writer with a single call. Tiles created while the
+ *         samples are still being decoded are incomplete and have to be
+ *         created again once more samples are available.
+ *
+ */
+final class SpectrogramTile {
+
+	/**
+	 * Number of rows of the images.
+	 */
+	static final int ROWS = 128;
+	/**
+	 * Lowest frequency shown in Hz.
+	 */
+	static final double MIN_FREQUENCY = 20;
+
+	private static final int FRAME_SIZE = 4096;
+	/**
+	 * Decibel of the smallest shown magnitude, a full scale sinusoid has 0 dB.
+	 */
+	private static final double MIN_DECIBEL = -100;
+	private static final int[] COLORS = createColors();
+
+	private final WritableImage image;
+	private final int size;
+	/**
+	 * Number of samples of the channel when the tile was created.
+	 */
+	private final long available;
+	private final boolean complete;
+
+	private SpectrogramTile(WritableImage image, int size, long available, boolean complete) {
+		this.image = image;
+		this.size = size;
+		this.available = available;
+		this.complete = complete;
+	}
+
+	/**
+	 * Creates a tile from the samples of its channel. Called on a background thread.
+	 * @param key - Key of the tile.
+	 * @return The tile.
+	 */
+	static SpectrogramTile create(TileKey key) {
+		AudioChannel channel = key.getChannel();
+		SampleStore store = channel.getSampleStore();
+		long available = store.size();
+		int zoom = key.getZoom();
+		//Number of samples per column of the image
+		long span = zoom >= 0 ? 1L << zoom : 1;
+		int count = zoom >= 0 ? WaveformTile.COLUMNS : WaveformTile.COLUMNS >> -zoom;
+		long first = key.getIndex() * count * span;
+		int[] rowBins = getRowBins(channel.getSampleRate());
+
+		FeatureEngine engine = new FeatureEngine(channel.getSampleRate(), FRAME_SIZE, FRAME_SIZE, 1, false);
+		short[] frame = new short[FRAME_SIZE];
+		int[] pixels = new int[count * ROWS];
+		int size = 0;
+		while (size < count) {
+			long position = first + size * span;
+			if(position >= available) {
+				break;
+			}
+			//The frame is moved inside of the available samples, missing samples stay silent
+			long start = Math.max(0, Math.min(position - FRAME_SIZE / 2, available - FRAME_SIZE));
+			int read = store.read(start, frame, 0, FRAME_SIZE);
+			if(read <= 0) {
+				break;
+			}
+			for (int i = read; i < FRAME_SIZE; i++) {
+				frame[i] = 0;
+			}
+			engine.process(frame, 0, FRAME_SIZE);
+			Spectrum spectrum = engine.getSpectrum(0);
+			float[] magnitudes = spectrum.getMagnitudes();
+			for (int row = 0; row < ROWS; row++) {
+				float magnitude = 0;
+				for (int bin = rowBins[row * 2]; bin < rowBins[row * 2 + 1]; bin++) {
+					magnitude = Math.max(magnitude, magnitudes[bin]);
+				}
+				//Low frequencies are at the bottom of the image
+				pixels[(ROWS - 1 - row) * count + size] = getColor(magnitude);
+			}
+			size++;
+		}
+		WritableImage image = new WritableImage(count, ROWS);
+		image.getPixelWriter().setPixels(0, 0, count, ROWS, PixelFormat.getIntArgbInstance(), pixels, 0, count);
+		boolean complete = first + count * span + FRAME_SIZE / 2 <= available
+				|| available >= channel.getFrameCount();
+		return new SpectrogramTile(image, size, available, complete);
+	}
+
+	/**
+	 * @param sampleRate - Sample rate of the channel.
+	 * @return First bin of every row at index 2 * row and the bin after its last bin at index 2 * row + 1.
+	 */
+	private static int[] getRowBins(int sampleRate) {
+		double nyquist = sampleRate / 2.0;
+		double binWidth = (double) sampleRate / FRAME_SIZE;
+		int lastBin = FRAME_SIZE / 2;
+		int[] bins = new int[ROWS * 2];
+		for (int row = 0; row < ROWS; row++) {
+			double low = MIN_FREQUENCY * Math.pow(nyquist / MIN_FREQUENCY, (double) row / ROWS);
+			double high = MIN_FREQUENCY * Math.pow(nyquist / MIN_FREQUENCY, (double) (row + 1) / ROWS);
+			int first = (int) Math.round(low / binWidth);
+			int end = (int) Math.round(high / binWidth);
+			if(end <= first) {
+				//Rows narrower than a bin show the bin of their centre
+				first = (int) Math.round(Math.sqrt(low * high) / binWidth);
+				end = first + 1;
+			}
+			bins[row * 2] = Math.min(lastBin, first);
+			bins[row * 2 + 1] = Math.min(lastBin + 1, end);
+		}
+		return bins;
+	}
+
+	private static int getColor(float magnitude) {
+		double decibel = 20 * Math.log10(Math.max(magnitude, 1e-12));
+		double value = Math.max(0, Math.min(1, 1 - decibel / MIN_DECIBEL));
+		return COLORS[(int) (value * (COLORS.length - 1))];
+	}
+
+	/**
+	 * Creates the colors from black over blue, purple, red and yellow to white.
+	 */
+	private static int[] createColors() {
+		int[][] stops = { { 0, 0, 0 }, { 0, 0, 140 }, { 140, 0, 140 }, { 230, 30, 0 }, { 255, 210, 0 },
+				{ 255, 255, 255 } };
+		int[] colors = new int[256];
+		for (int i = 0; i < colors.length; i++) {
+			double position = (double) i / (colors.length - 1) * (stops.length - 1);
+			int stop = Math.min(stops.length - 2, (int) position);
+			double fraction = position - stop;
+			int argb = 0xFF;
+			for (int component = 0; component < 3; component++) {
+				int value = (int) Math.round(stops[stop][component]
+						+ (stops[stop + 1][component] - stops[stop][component]) * fraction);
+				argb = (argb << 8) | value;
+			}
+			colors[i] = argb;
+		}
+		return colors;
+	}
+
+	WritableImage getImage() {
+		return image;
+	}
+
+	/**
+	 * @return Number of columns of the image which contain a spectrum.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param channel - Channel shown by the tile.
+	 * @return True if more samples of the tile have been decoded since it was created.
+	 */
+	boolean isOutdated(AudioChannel channel) {
+		return !complete && channel.getSampleStore().size() > available;
+	}
+}
@@ -0,0 +1,101 @@
+package lanr.view;
+
+import java.util.Collection;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import lanr.logic.model.AudioChannel;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Spectrogram of an audio channel, shown below its waveform in the
+ *         {@link AudioVisualisation}. Only the visible part is drawn from the
+ *         images of {@link SpectrogramTile}s of the current zoom level, the
+ *         frequency increases from the bottom to the top.<br>
+ *         Missing tiles are requested from the {@link TileCache}, cached tiles
+ *         of coarser zoom levels are stretched over their place until they
+ *         are available.
+ *
+ */
+public class SpectrogramVisualisation extends Canvas {
+
+	/**
+	 * Number of coarser zoom levels searched for a replacement of a missing tile.
+	 */
+	private static final int FALLBACK_LEVELS = 6;
+
+	private final AudioChannel channel;
+	private final TileCache<SpectrogramTile> tiles;
+
+	/**
+	 * @param width - Initial width of the canvas.
+	 * @param height - Initial height of the canvas.
+	 * @param channel - Channel which is drawn.
+	 * @param tiles - Cache containing the tiles of the channel.
+	 */
+	SpectrogramVisualisation(double width, double height, AudioChannel channel, TileCache<SpectrogramTile> tiles) {
+		super(width, height);
+		this.channel = channel;
+		this.tiles = tiles;
+	}
+
+	/**
+	 * Draws the visible columns. Has to be called on the application thread.
+	 * @param zoom - Zoom level, a column covers 2<sup>zoom</sup> samples.
+	 * @param firstColumn - Column at the left edge of the canvas.
+	 * @param needed - Receives the keys of the visible tiles.
+	 */
+	void draw(int zoom, double firstColumn, Collection<TileKey> needed) {
+		GraphicsContext context = this.getGraphicsContext2D();
+		double width = getWidth();
+		double height = getHeight();
+		context.clearRect(0, 0, width, height);
+		long start = Math.max(0, (long) Math.floor(firstColumn));
+		long end = Math.min(ChannelVisualisation.getColumnCount(channel.getFrameCount(), zoom),
+				(long) Math.ceil(firstColumn + width));
+		for (long index = start / WaveformTile.COLUMNS; index * WaveformTile.COLUMNS < end; index++) {
+			TileKey key = new TileKey(channel, zoom, index);
+			needed.add(key);
+			SpectrogramTile tile = tiles.get(key);
+			if(tile == null || tile.isOutdated(channel)) {
+				tiles.request(key);
+			}
+			double x = index * WaveformTile.COLUMNS - firstColumn;
+			if(tile != null) {
+				//At negative zoom levels the image has a column per sample
+				double columns = Math.scalb(1.0, Math.max(0, -zoom));
+				context.drawImage(tile.getImage(), 0, 0, tile.size(), SpectrogramTile.ROWS,
+						x, 0, tile.size() * columns, height);
+			} else {
+				drawFallback(context, zoom, index, x, height);
+			}
+		}
+	}
+
+	/**
+	 * Draws a missing tile from the first cached tile of a coarser zoom level.
+	 */
+	private void drawFallback(GraphicsContext context, int zoom, long index, double x, double height) {
+		//First sample of the tile, the tiles of all levels start at a power of two
+		long sample = zoom >= 0 ? (index * WaveformTile.COLUMNS) << zoom : (index * WaveformTile.COLUMNS) >> -zoom;
+		for (int level = Math.max(0, zoom + 1); level <= zoom + FALLBACK_LEVELS; level++) {
+			long coarseColumn = sample >> level;
+			SpectrogramTile tile = tiles.get(new TileKey(channel, level, coarseColumn / WaveformTile.COLUMNS));
+			double offset = coarseColumn % WaveformTile.COLUMNS;
+			if(tile != null && offset < tile.size()) {
+				//Columns of the coarse tile covering this tile
+				double columns = Math.scalb((double) WaveformTile.COLUMNS, zoom - level);
+				double shown = Math.min(columns, tile.size() - offset);
+				context.drawImage(tile.getImage(), offset, 0, shown, SpectrogramTile.ROWS,
+						x, 0, WaveformTile.COLUMNS * shown / columns, height);
+				return;
+			}
+		}
+	}
+
+	public AudioChannel getAudioChannel() {
+		return channel;
+	}
+
+}
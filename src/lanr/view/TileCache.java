@@ -0,0 +1,132 @@
+package lanr.view;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Keeps the most recently used tiles of a view and creates missing
+ *         tiles in the background, so the application thread only draws tiles
+ *         which are already available. The least recently used tile is removed
+ *         when the cache is full.<br>
+ *         Requests for tiles which are no longer visible can be cancelled
+ *         before they are started, so scrolling quickly does not queue up
+ *         work for parts which are not shown anymore.
+ *
+ * @param <T> Type of the tiles.
+ */
+class TileCache<T> {
+
+	/**
+	 * Threads creating the tiles of all caches.
+	 */
+	private static final ExecutorService LOADER = Executors.newFixedThreadPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors() / 2), createThreadFactory());
+
+	private final Map<TileKey, T> tiles;
+	private final Map<TileKey, FutureTask<T>> pending = new HashMap<TileKey, FutureTask<T>>();
+	private final Function<TileKey, T> loader;
+	private final Runnable loaded;
+
+	/**
+	 * @param capacity - Maximum number of tiles.
+	 * @param loader - Creates a tile, called on a background thread. Returns
+	 *            null if the tile can't be created.
+	 * @param loaded - Called on the background thread after a tile has been added.
+	 */
+	TileCache(int capacity, Function<TileKey, T> loader, Runnable loaded) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("Capacity musn't be " + capacity);
+		}
+		this.tiles = new LinkedHashMap<TileKey, T>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<TileKey, T> eldest) {
+				return size() > capacity;
+			}
+		};
+		this.loader = loader;
+		this.loaded = loaded;
+	}
+
+	/**
+	 * @param key - Key of the tile.
+	 * @return The cached tile or null if it has not been created yet.
+	 */
+	synchronized T get(TileKey key) {
+		return tiles.get(key);
+	}
+
+	/**
+	 * Creates a tile in the background, unless it is already being created.
+	 * A cached tile is replaced by the new one.
+	 * @param key - Key of the tile.
+	 */
+	synchronized void request(TileKey key) {
+		if(pending.containsKey(key)) {
+			return;
+		}
+		FutureTask<T> task = new FutureTask<T>(() -> loader.apply(key)) {
+
+			@Override
+			protected void done() {
+				if(isCancelled()) {
+					return;
+				}
+				T tile = null;
+				try {
+					tile = get();
+				} catch (Exception e) {
+					//A failed tile is requested again when it is needed
+				}
+				synchronized (TileCache.this) {
+					pending.remove(key, this);
+					if(tile != null) {
+						tiles.put(key, tile);
+					}
+				}
+				if(tile != null) {
+					loaded.run();
+				}
+			}
+		};
+		pending.put(key, task);
+		LOADER.execute(task);
+	}
+
+	/**
+	 * Cancels the requests of all tiles which are not needed anymore.
+	 * @param needed - Keys of the tiles which are still needed.
+	 */
+	synchronized void retain(Collection<TileKey> needed) {
+		Iterator<Map.Entry<TileKey, FutureTask<T>>> iterator = pending.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<TileKey, FutureTask<T>> entry = iterator.next();
+			if(!needed.contains(entry.getKey())) {
+				entry.getValue().cancel(false);
+				iterator.remove();
+			}
+		}
+	}
+
+	private static ThreadFactory createThreadFactory() {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "LANR-Tiles-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,55 @@
+package lanr.view;
+
+import lanr.logic.model.AudioChannel;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Identifies a tile of a channel. A tile covers a fixed number of
+ *         pixel columns at a zoom level, so the zoom level and the index of
+ *         the tile determine the time range it shows.
+ *
+ */
+final class TileKey {
+
+	private final AudioChannel channel;
+	private final int zoom;
+	private final long index;
+
+	/**
+	 * @param channel - Channel shown by the tile.
+	 * @param zoom - Zoom level of the tile.
+	 * @param index - Position of the tile at its zoom level.
+	 */
+	TileKey(AudioChannel channel, int zoom, long index) {
+		this.channel = channel;
+		this.zoom = zoom;
+		this.index = index;
+	}
+
+	AudioChannel getChannel() {
+		return channel;
+	}
+
+	int getZoom() {
+		return zoom;
+	}
+
+	long getIndex() {
+		return index;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(!(other instanceof TileKey)) {
+			return false;
+		}
+		TileKey key = (TileKey) other;
+		return key.channel == channel && key.zoom == zoom && key.index == index;
+	}
+
+	@Override
+	public int hashCode() {
+		return (System.identityHashCode(channel) * 31 + zoom) * 31 + Long.hashCode(index);
+	}
+}
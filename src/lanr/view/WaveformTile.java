@@ -0,0 +1,102 @@
+package lanr.view;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.PeakPyramid;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Peaks of the pixel columns of a {@link TileKey tile}. At zoom level
+ *         z a column covers 2<sup>z</sup> samples. At negative levels a
+ *         sample covers several columns, the tile then contains the samples
+ *         themselves, which are drawn as a line instead of as peaks.<br>
+ *         Tiles created while the samples are still being decoded are
+ *         incomplete and have to be created again once more samples are
+ *         available.
+ *
+ */
+final class WaveformTile {
+
+	/**
+	 * Number of pixel columns of a tile.
+	 */
+	static final int COLUMNS = 256;
+	/**
+	 * Smallest zoom level, a sample covers 2<sup>-MIN_ZOOM</sup> columns.
+	 */
+	static final int MIN_ZOOM = -4;
+
+	private final short[] mins;
+	private final short[] maxs;
+	private final int size;
+	/**
+	 * Number of summarised samples of the channel when the tile was created.
+	 */
+	private final long available;
+	private final boolean complete;
+
+	private WaveformTile(short[] mins, short[] maxs, int size, long available, boolean complete) {
+		this.mins = mins;
+		this.maxs = maxs;
+		this.size = size;
+		this.available = available;
+		this.complete = complete;
+	}
+
+	/**
+	 * Creates a tile from the peaks of its channel. Called on a background thread.
+	 * @param key - Key of the tile.
+	 * @return The tile.
+	 */
+	static WaveformTile create(TileKey key) {
+		AudioChannel channel = key.getChannel();
+		PeakPyramid peaks = channel.getPeaks();
+		long available = peaks.getSampleCount();
+		int zoom = key.getZoom();
+		//Number of samples per value of the tile
+		long span = zoom >= 0 ? 1L << zoom : 1;
+		int count = zoom >= 0 ? COLUMNS : COLUMNS >> -zoom;
+		long first = key.getIndex() * count * span;
+		short[] mins = new short[count];
+		short[] maxs = new short[count];
+		short[] peak = new short[2];
+		int size = 0;
+		while (size < count) {
+			long from = first + size * span;
+			if(from >= available) {
+				break;
+			}
+			if(!peaks.getPeak(channel.getSampleStore(), from, Math.min(available, from + span), peak)) {
+				break;
+			}
+			mins[size] = peak[0];
+			maxs[size] = peak[1];
+			size++;
+		}
+		boolean complete = first + count * span <= available || available >= channel.getFrameCount();
+		return new WaveformTile(mins, maxs, size, available, complete);
+	}
+
+	/**
+	 * @return Number of values of the tile.
+	 */
+	int size() {
+		return size;
+	}
+
+	short getMin(int index) {
+		return mins[index];
+	}
+
+	short getMax(int index) {
+		return maxs[index];
+	}
+
+	/**
+	 * @param channel - Channel shown by the tile.
+	 * @return True if more samples of the tile have been decoded since it was created.
+	 */
+	boolean isOutdated(AudioChannel channel) {
+		return !complete && channel.getPeaks().getSampleCount() > available;
+	}
+}
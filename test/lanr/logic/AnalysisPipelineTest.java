@@ -0,0 +1,58 @@
+package lanr.logic;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.AudioData;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Tests that a failing consumer stops the decoder writing into the
+ *         {@link AnalysisPipeline}.
+ *
+ */
+public class AnalysisPipelineTest {
+
+	private static final int BLOCK_SIZE = 16;
+	private static final int QUEUE_CAPACITY = 2;
+	private static final int MAX_WRITES = 100000;
+
+	@Test
+	public void failedConsumerStopsTheDecoder() throws InterruptedException {
+		List<AudioChannel> channels = new ArrayList<AudioChannel>();
+		AudioData data = new AudioData("failing.wav", channels);
+		AudioChannel channel = new AudioChannel(16, 8000, 0, 0, 0, 0);
+		channel.setParent(data);
+		channels.add(channel);
+		AnalysisPipeline pipeline = new AnalysisPipeline(data, BLOCK_SIZE, QUEUE_CAPACITY);
+		IllegalStateException failure = new IllegalStateException("Consumer failed");
+		pipeline.addConsumer(c -> block -> {
+			throw failure;
+		});
+		pipeline.start();
+
+		short[] samples = new short[BLOCK_SIZE];
+		AtomicInteger writes = new AtomicInteger();
+		IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> {
+			while (writes.incrementAndGet() < MAX_WRITES) {
+				pipeline.write(channel, samples, 0, samples.length);
+			}
+		});
+		assertSame(failure, thrown);
+		//Only the blocks written before the worker noticed the failure are accepted
+		assertTrue(writes.get() < MAX_WRITES);
+
+		pipeline.cancel();
+		pipeline.close();
+		assertSame(failure, assertThrows(IllegalStateException.class, pipeline::await));
+	}
+}
@@ -0,0 +1,82 @@
+package lanr.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.Noise;
+import lanr.logic.model.NoiseType;
+import lanr.logic.model.SampleBuffer;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Tests the {@link ClippingSearch} on floating point samples, which
+ *         are converted to 16 bit by a {@link SampleBuffer}.
+ *
+ */
+public class ClippingSearchTest {
+
+	private static final int SAMPLE_RATE = 48000;
+	private static final int LENGTH = 4800;
+	private static final int CLIP_START = 2000;
+	private static final int CLIP_LENGTH = 10;
+
+	@Test
+	public void negativeFullScaleIsClipped() {
+		List<Noise> noises = search(createFloatSamples(-1f));
+		assertEquals(1, noises.size());
+		assertEquals(NoiseType.Clipping, noises.get(0).getType());
+		assertEquals(CLIP_START, noises.get(0).getLocation());
+	}
+
+	@Test
+	public void positiveFullScaleIsClipped() {
+		List<Noise> noises = search(createFloatSamples(1f));
+		assertEquals(1, noises.size());
+		assertEquals(CLIP_START, noises.get(0).getLocation());
+	}
+
+	@Test
+	public void floatSamplesAreScaledLike16BitSamples() {
+		short[] samples = createFloatSamples(-1f);
+		assertEquals(Short.MIN_VALUE, samples[CLIP_START]);
+		assertEquals(Short.MAX_VALUE, createFloatSamples(1f)[CLIP_START]);
+	}
+
+	/**
+	 * Creates a quiet sinusoid with a run of samples at the given value,
+	 * stored as 32 bit floating point values and read as 16 bit values.
+	 */
+	private static short[] createFloatSamples(float clipValue) {
+		ByteBuffer bytes = ByteBuffer.allocate(LENGTH * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < LENGTH; i++) {
+			float value = (float) (0.5 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+			if(i >= CLIP_START && i < CLIP_START + CLIP_LENGTH) {
+				value = clipValue;
+			}
+			bytes.putFloat(value);
+		}
+		SampleBuffer buffer = new SampleBuffer(bytes, SampleBuffer.Encoding.FLOAT_32, 1);
+		short[] samples = new short[LENGTH];
+		buffer.read(0, 0, samples, 0, LENGTH);
+		return samples;
+	}
+
+	private static List<Noise> search(short[] samples) {
+		AudioChannel channel = new AudioChannel(SampleBuffer.Encoding.FLOAT_32.getBitDepth(), SAMPLE_RATE, 0, 0, 0,
+				samples.length);
+		List<Noise> found = new ArrayList<Noise>();
+		ClippingSearch search = new ClippingSearch();
+		search.start(channel, found::add);
+		search.onBlock(samples, samples.length);
+		search.finish();
+		return found;
+	}
+}
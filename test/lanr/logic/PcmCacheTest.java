@@ -0,0 +1,122 @@
+package lanr.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.AudioData;
+import lanr.logic.model.HeapSampleStore;
+import lanr.logic.model.SampleStore;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Tests the eviction of the {@link PcmCache}.
+ *
+ */
+public class PcmCacheTest {
+
+	private static final int SAMPLE_COUNT = 10000;
+	/**
+	 * Fits a single entry.
+	 */
+	private static final long MAX_SIZE = SAMPLE_COUNT * 2 + 1000;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void evictionKeepsOpenEntries() throws IOException {
+		Path cacheDirectory = directory.resolve("cache");
+		PcmCache cache = new PcmCache(cacheDirectory, MAX_SIZE);
+		Path first = createAudioFile("first.wav");
+		Path second = createAudioFile("second.wav");
+		cache.save(createAudioData(first, true));
+		String firstKey = getKey(listFiles(cacheDirectory).get(0));
+		//The peaks belong to the same entry as the samples
+		Path firstPeaks = Files.write(cacheDirectory.resolve(firstKey + ".peaks"), new byte[16]);
+
+		AudioData opened = createAudioData(first, false);
+		assertTrue(cache.load(opened));
+		cache.save(createAudioData(second, true));
+		assertTrue(Files.exists(firstPeaks));
+		assertEquals(2, countEntryFiles(cacheDirectory, firstKey));
+
+		opened.getAllChannel().get(0).releaseSamples();
+		cache.save(createAudioData(second, true));
+		for(Path file : listFiles(cacheDirectory)) {
+			assertFalse(getKey(file).equals(firstKey), "The closed entry has been evicted completely");
+		}
+		AudioData reopened = createAudioData(second, false);
+		assertTrue(cache.load(reopened));
+		reopened.getAllChannel().get(0).releaseSamples();
+	}
+
+	@Test
+	public void evictionDeletesStaleTemporaryFiles() throws IOException {
+		Path cacheDirectory = directory.resolve("cache");
+		Files.createDirectories(cacheDirectory);
+		Path stale = Files.createFile(cacheDirectory.resolve("lanr-stale.tmp"));
+		Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+		Path written = Files.createFile(cacheDirectory.resolve("lanr-written.tmp"));
+
+		new PcmCache(cacheDirectory, MAX_SIZE).save(createAudioData(createAudioFile("first.wav"), true));
+		assertFalse(Files.exists(stale));
+		assertTrue(Files.exists(written));
+	}
+
+	private Path createAudioFile(String name) throws IOException {
+		return Files.write(directory.resolve(name), name.getBytes());
+	}
+
+	/**
+	 * @param decoded - True if the channel contains decoded samples.
+	 */
+	private static AudioData createAudioData(Path file, boolean decoded) {
+		List<AudioChannel> channels = new ArrayList<AudioChannel>();
+		AudioData data = new AudioData(file.toString(), channels);
+		AudioChannel channel = new AudioChannel(16, 8000, 0, 0, 0, SAMPLE_COUNT);
+		channel.setParent(data);
+		channels.add(channel);
+		if(decoded) {
+			SampleStore store = new HeapSampleStore();
+			short[] samples = new short[SAMPLE_COUNT];
+			for (int i = 0; i < samples.length; i++) {
+				samples[i] = (short) i;
+			}
+			store.append(samples, 0, samples.length);
+			channel.setSampleStore(store);
+		}
+		return data;
+	}
+
+	private static List<Path> listFiles(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> !file.getFileName().toString().endsWith(".tmp")).collect(Collectors.toList());
+		}
+	}
+
+	private static long countEntryFiles(Path directory, String key) throws IOException {
+		return listFiles(directory).stream().filter(file -> getKey(file).equals(key)).count();
+	}
+
+	private static String getKey(Path file) {
+		String name = file.getFileName().toString();
+		int end = name.indexOf('-');
+		return name.substring(0, end >= 0 ? end : name.lastIndexOf('.'));
+	}
+}
@@ -0,0 +1,80 @@
+package lanr.logic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import lanr.logic.model.AudioChannel;
+import lanr.logic.model.Noise;
+import lanr.logic.model.NoiseType;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Tests that the {@link SilenceSearch} reports a silent area as soon
+ *         as it ends.
+ *
+ */
+public class SilenceSearchTest {
+
+	private static final int SAMPLE_RATE = 8000;
+	private static final int LOUD_LENGTH = SAMPLE_RATE;
+	private static final int SILENCE_LENGTH = 3 * SAMPLE_RATE;
+
+	@Test
+	public void silenceIsReportedWhenItEnds() {
+		List<Noise> found = new ArrayList<Noise>();
+		SilenceSearch search = new SilenceSearch();
+		search.start(createChannel(), found::add);
+
+		short[] loud = createLoudSamples(LOUD_LENGTH);
+		search.onBlock(loud, loud.length);
+		short[] silence = new short[SILENCE_LENGTH];
+		search.onBlock(silence, silence.length);
+		assertTrue(found.isEmpty());
+
+		search.onBlock(loud, loud.length);
+		assertEquals(1, found.size());
+		Noise noise = found.get(0);
+		assertEquals(NoiseType.Silence, noise.getType());
+		assertEquals(0, noise.getChannel());
+		//The window has to be silent completely, and loud enough again at its end
+		assertTrue(Math.abs(noise.getLocation() - LOUD_LENGTH) <= SAMPLE_RATE / 10);
+		assertTrue(Math.abs(noise.getLength() - SILENCE_LENGTH) <= SAMPLE_RATE / 10);
+
+		search.finish();
+		assertEquals(1, found.size());
+	}
+
+	@Test
+	public void silenceInProgressIsReportedByFinish() {
+		List<Noise> found = new ArrayList<Noise>();
+		SilenceSearch search = new SilenceSearch();
+		search.start(createChannel(), found::add);
+		short[] loud = createLoudSamples(LOUD_LENGTH);
+		search.onBlock(loud, loud.length);
+		short[] silence = new short[SILENCE_LENGTH];
+		search.onBlock(silence, silence.length);
+		assertTrue(found.isEmpty());
+
+		search.finish();
+		assertEquals(1, found.size());
+		assertEquals(LOUD_LENGTH + SILENCE_LENGTH, found.get(0).getLocation() + found.get(0).getLength());
+	}
+
+	private static AudioChannel createChannel() {
+		return new AudioChannel(16, SAMPLE_RATE, 0, 0, 0, 2 * LOUD_LENGTH + SILENCE_LENGTH);
+	}
+
+	private static short[] createLoudSamples(int length) {
+		short[] samples = new short[length];
+		for (int i = 0; i < length; i++) {
+			samples[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+		}
+		return samples;
+	}
+}
@@ -0,0 +1,170 @@
+package lanr.logic.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Compares the {@link NoiseStore} with a plain list of noises, which
+ *         is searched completely for every query.
+ *
+ */
+public class NoiseStoreTest {
+
+	private static final int OPERATIONS = 20000;
+	private static final int CHANNEL = 3;
+	private static final long CHANNEL_LENGTH = 100000;
+	private static final double DELTA = 1e-6;
+	private static final NoiseType[] TYPES = NoiseType.values();
+	private static final Comparator<Noise> ORDER = Comparator.comparingLong(Noise::getLocation)
+			.thenComparingLong(Noise::getLength)
+			.thenComparing(Noise::getType)
+			.thenComparingDouble(Noise::getSeverity);
+
+	@Test
+	public void storeMatchesAList() {
+		Random random = new Random(42);
+		NoiseStore store = new NoiseStore();
+		List<Noise> expected = new ArrayList<Noise>();
+		List<Noise> stored = new ArrayList<Noise>();
+		for (int i = 0; i < OPERATIONS; i++) {
+			if(expected.isEmpty() || random.nextInt(10) < 6) {
+				Noise noise = createNoise(random);
+				expected.add(noise);
+				stored.add(store.add(noise, CHANNEL));
+			} else {
+				int index = random.nextInt(expected.size());
+				Noise noise = expected.remove(index);
+				Noise view = stored.remove(index);
+				//Noises can be removed by their view or by a noise with the same values
+				double severity = store.remove(random.nextBoolean() ? view : copy(noise));
+				assertEquals(noise.getSeverity(), severity);
+			}
+			if(i % 100 == 0) {
+				assertMatches(expected, store, random);
+			}
+		}
+		assertMatches(expected, store, random);
+	}
+
+	@Test
+	public void viewsOfRemovedNoisesDoNotSeeReusedRows() {
+		NoiseStore store = new NoiseStore();
+		Noise removed = store.add(new Noise(NoiseType.Hum, 100, 50, 0.5), CHANNEL);
+		Noise kept = store.add(new Noise(NoiseType.Silence, 1000, 500, 0.25), CHANNEL);
+		assertEquals(0.5, store.remove(removed));
+		//The new noise takes the row of the removed one
+		Noise added = store.add(new Noise(NoiseType.Clipping, 200, 5, 0.75), CHANNEL);
+
+		assertThrows(IllegalStateException.class, removed::getLocation);
+		assertThrows(IllegalStateException.class, removed::getType);
+		assertFalse(store.contains(removed));
+		assertFalse(removed.equals(added));
+		assertEquals(0, store.remove(removed));
+		assertEquals(2, store.size());
+		assertEquals(1.0, store.getSeverity(), DELTA);
+
+		assertEquals(NoiseType.Clipping, added.getType());
+		assertEquals(200, added.getLocation());
+		assertEquals(5, added.getLength());
+		assertEquals(0.75, added.getSeverity());
+		assertEquals(CHANNEL, added.getChannel());
+		assertEquals(1000, kept.getLocation());
+	}
+
+	@Test
+	public void storedNoisesCanNotBeChanged() {
+		Noise stored = new NoiseStore().add(new Noise(NoiseType.Hum, 100, 50, 0.5), CHANNEL);
+		assertThrows(UnsupportedOperationException.class, () -> stored.setLocation(0));
+		assertThrows(UnsupportedOperationException.class, () -> stored.setSeverity(1));
+	}
+
+	@Test
+	public void removingAnUnknownNoiseChangesNothing() {
+		NoiseStore store = new NoiseStore();
+		store.add(new Noise(NoiseType.Hum, 100, 50, 0.5), CHANNEL);
+		assertEquals(0, store.remove(new Noise(NoiseType.Hum, 100, 50, 0.25)));
+		assertEquals(0, store.remove(new Noise(NoiseType.Clipping, 100, 50, 0.5)));
+		assertEquals(1, store.size());
+		assertEquals(0.5, store.getSeverity(), DELTA);
+	}
+
+	@Test
+	public void overlappingNoisesIncludeTouchingRanges() {
+		NoiseStore store = new NoiseStore(Arrays.asList(
+				new Noise(NoiseType.Silence, 0, 100, 1),
+				new Noise(NoiseType.Clipping, 100, 10, 1),
+				new Noise(NoiseType.Hum, 50, 1000, 1)), CHANNEL);
+		assertEquals(2, store.getOverlapping(99, 100).size());
+		assertEquals(2, store.getOverlapping(100, 101).size());
+		assertEquals(1, store.getOverlapping(110, 2000).size());
+		assertTrue(store.getOverlapping(1050, 2000).isEmpty());
+		assertTrue(store.getOverlapping(10, 10).isEmpty());
+	}
+
+	private static void assertMatches(List<Noise> expected, NoiseStore store, Random random) {
+		assertEquals(expected.size(), store.size());
+		assertSameNoises(expected, store.getAll());
+		List<Noise> all = store.getAll();
+		for (int i = 1; i < all.size(); i++) {
+			assertTrue(all.get(i - 1).getLocation() <= all.get(i).getLocation());
+		}
+
+		double severity = 0;
+		for(Noise noise : expected) {
+			severity += noise.getSeverity();
+		}
+		assertEquals(severity, store.getSeverity(), DELTA);
+		for(NoiseType type : TYPES) {
+			List<Noise> ofType = expected.stream().filter(n -> n.getType() == type).collect(Collectors.toList());
+			assertEquals(ofType.size(), store.getCount(type));
+			assertEquals(ofType.stream().mapToDouble(Noise::getSeverity).sum(), store.getSeverity(type), DELTA);
+		}
+
+		for (int query = 0; query < 10; query++) {
+			long from = random.nextInt((int) CHANNEL_LENGTH);
+			long to = from + 1 + random.nextInt(2000);
+			List<Noise> overlapping = expected.stream()
+					.filter(n -> n.getLocation() < to && n.getLocation() + n.getLength() > from)
+					.collect(Collectors.toList());
+			assertSameNoises(overlapping, store.getOverlapping(from, to));
+		}
+		for(Noise noise : expected) {
+			assertTrue(store.contains(copy(noise)));
+		}
+		assertFalse(store.contains(new Noise(NoiseType.Hum, -1, 1, 0)));
+	}
+
+	private static void assertSameNoises(List<Noise> expected, List<Noise> actual) {
+		assertEquals(expected.size(), actual.size());
+		List<Noise> sortedExpected = new ArrayList<Noise>(expected);
+		List<Noise> sortedActual = new ArrayList<Noise>(actual);
+		sortedExpected.sort(ORDER);
+		sortedActual.sort(ORDER);
+		for (int i = 0; i < sortedExpected.size(); i++) {
+			assertEquals(0, ORDER.compare(sortedExpected.get(i), sortedActual.get(i)));
+			assertEquals(CHANNEL, sortedActual.get(i).getChannel());
+		}
+	}
+
+	private static Noise createNoise(Random random) {
+		return new Noise(TYPES[random.nextInt(TYPES.length)], random.nextInt((int) CHANNEL_LENGTH),
+				random.nextInt(500), random.nextInt(100) / 100.0);
+	}
+
+	private static Noise copy(Noise noise) {
+		return new Noise(noise.getType(), noise.getLocation(), noise.getLength(), noise.getSeverity());
+	}
+}
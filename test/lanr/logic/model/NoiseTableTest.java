@@ -0,0 +1,58 @@
+package lanr.logic.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Tests that the {@link NoiseTable} reuses removed rows.
+ *
+ */
+public class NoiseTableTest {
+
+	private static final int CAPACITY = 8;
+
+	@Test
+	public void removedRowsAreReused() {
+		NoiseTable table = new NoiseTable(CAPACITY);
+		for (int i = 0; i < CAPACITY; i++) {
+			assertEquals(i, table.add(NoiseType.Clipping, i * 100, 10, 0.5, 0));
+		}
+		Set<Integer> removed = new HashSet<Integer>();
+		for (int row = 1; row < CAPACITY; row += 2) {
+			table.remove(row);
+			removed.add(row);
+		}
+		assertEquals(CAPACITY - removed.size(), table.size());
+
+		Set<Integer> reused = new HashSet<Integer>();
+		for (int i = 0; i < removed.size(); i++) {
+			int row = table.add(NoiseType.Hum, 5000 + i, 20, 0.75, 1);
+			reused.add(row);
+			assertEquals(NoiseType.Hum, table.getType(row));
+			assertEquals(5000 + i, table.getLocation(row));
+			assertEquals(20, table.getLength(row));
+			assertEquals(0.75, table.getSeverity(row));
+			assertEquals(1, table.getChannel(row));
+		}
+		assertEquals(removed, reused);
+		//The columns only grow once all removed rows are used again
+		assertEquals(CAPACITY, table.capacity());
+		assertEquals(CAPACITY, table.add(NoiseType.Silence, 0, 1, 1, 0));
+		assertEquals(CAPACITY + 1, table.size());
+	}
+
+	@Test
+	public void unknownRowsCanNotBeRemoved() {
+		NoiseTable table = new NoiseTable(CAPACITY);
+		table.add(NoiseType.Clipping, 0, 10, 0.5, 0);
+		assertThrows(IllegalArgumentException.class, () -> table.remove(1));
+		assertThrows(IllegalArgumentException.class, () -> table.remove(-1));
+	}
+}
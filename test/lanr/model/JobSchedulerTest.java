@@ -0,0 +1,138 @@
+package lanr.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Nicolas Bruch
+ *
+ *         Tests the order and the error handling of the {@link JobScheduler}.
+ *
+ */
+public class JobSchedulerTest {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private JobScheduler scheduler;
+
+	@AfterEach
+	public void shutdown() {
+		if(scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void moreJobsThanThreadsWaitInTheQueue() throws InterruptedException {
+		scheduler = new JobScheduler(2);
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < 2; i++) {
+			scheduler.submitBatch(() -> {
+				started.countDown();
+				await(release);
+			}, 1000);
+		}
+		assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		//All threads are busy, so every further job has to wait in the queue
+		CountDownLatch finished = new CountDownLatch(5);
+		for (long duration : new long[] { 3, 1, 5, 2, 4 }) {
+			scheduler.submitBatch(finished::countDown, duration);
+		}
+		assertEquals(5, scheduler.getQueuedBatchJobs());
+		release.countDown();
+		assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(0, scheduler.getQueuedBatchJobs());
+	}
+
+	@Test
+	public void queuedBatchJobsRunLongestFirst() throws InterruptedException {
+		scheduler = new JobScheduler(1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler.submitBatch(() -> {
+			started.countDown();
+			await(release);
+		}, 0);
+		assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		List<Long> order = Collections.synchronizedList(new ArrayList<Long>());
+		CountDownLatch finished = new CountDownLatch(3);
+		for (long duration : new long[] { 1, 3, 2 }) {
+			scheduler.submitBatch(() -> {
+				order.add(duration);
+				finished.countDown();
+			}, duration);
+		}
+		release.countDown();
+		assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(3L, 2L, 1L), order);
+	}
+
+	@Test
+	public void runningJobsAreNotIdle() throws InterruptedException {
+		scheduler = new JobScheduler(4);
+		assertEquals(4, scheduler.getIdleBatchThreads());
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler.submitBatch(() -> {
+			started.countDown();
+			await(release);
+		}, 1);
+		scheduler.submitInteractive(() -> {
+			started.countDown();
+			await(release);
+		});
+		assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(2, scheduler.getIdleBatchThreads());
+		release.countDown();
+	}
+
+	@Test
+	public void exceptionsOfJobsAreReported() throws InterruptedException {
+		scheduler = new JobScheduler(1);
+		AtomicReference<Object> error = new AtomicReference<Object>();
+		CountDownLatch reported = new CountDownLatch(2);
+		scheduler.addChangeListener(evt -> {
+			if(JobScheduler.ERROR_PROPERTY.equals(evt.getPropertyName())) {
+				error.set(evt.getNewValue());
+				reported.countDown();
+			}
+		});
+		IllegalStateException failure = new IllegalStateException("Job failed");
+		scheduler.submitBatch(() -> {
+			throw failure;
+		}, 1);
+		scheduler.submitInteractive(() -> {
+			throw failure;
+		});
+		assertTrue(reported.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertSame(failure, error.get());
+
+		//The thread of the failed job keeps running jobs
+		CountDownLatch finished = new CountDownLatch(1);
+		scheduler.submitBatch(finished::countDown, 1);
+		assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}